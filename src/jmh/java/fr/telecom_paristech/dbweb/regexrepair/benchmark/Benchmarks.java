@@ -0,0 +1,27 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation and GC profiler ({@code -prof gc}) enabled. Takes the same arguments as the JMH launcher, e.g.
+ * {@code java -jar target/benchmarks.jar MatcherBenchmark -p wordLength=64}
+ */
+public class Benchmarks {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    if (cmd.shouldHelp()) {
+      cmd.showHelp();
+      return;
+    }
+    Runner runner = new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build());
+    if (cmd.shouldList()) {
+      runner.list();
+    } else {
+      runner.run();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the inputs of the benchmarks, so that they don't depend on downloaded datasets.
+ * The words are phone numbers in several formats; the same seed gives the same data.
+ */
+public class Datasets {
+
+  /** Regex that matches only one of the formats of {@link #phoneNumber()} */
+  public static final String PHONE_REGEX = "[0-9]{3}-[0-9]{3}-[0-9]{4}";
+
+  private static final String[] FORMATS = { "ddd-ddd-dddd", "(ddd) ddd-dddd", "+dd d dd dd dd dd", "ddd.ddd.dddd", "dddddddddd",
+      "+d ddd ddd dddd", "ddd-dddd", "(ddd) ddd dddd x ddd" };
+
+  private final Random random;
+
+  public Datasets(long seed) {
+    random = new Random(seed);
+  }
+
+  /** A phone number in a random format */
+  public String phoneNumber() {
+    String format = FORMATS[random.nextInt(FORMATS.length)];
+    StringBuilder sb = new StringBuilder(format.length());
+    for (int i = 0; i < format.length(); i++) {
+      char c = format.charAt(i);
+      sb.append(c == 'd' ? (char) ('0' + random.nextInt(10)) : c);
+    }
+    return sb.toString();
+  }
+
+  /** Phone numbers in random formats */
+  public List<String> phoneNumbers(int count) {
+    List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(phoneNumber());
+    }
+    return result;
+  }
+
+  /** A word of the given length, made of phone numbers separated by spaces */
+  public String word(int length) {
+    StringBuilder sb = new StringBuilder(length + 32);
+    while (sb.length() < length) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(phoneNumber());
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+  /** A regex whose size grows with the number of parts: a sequence of phone number formats with optional, repeated and alternative parts */
+  public static String regex(int parts) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < parts; i++) {
+      if (i > 0) {
+        sb.append(" ?");
+      }
+      switch (i % 3) {
+        case 0:
+          sb.append("(\\(?[0-9]{3}\\)? )?[0-9]{3}-[0-9]{4}");
+          break;
+        case 1:
+          sb.append("(\\+[0-9]+ )?([0-9]+[ .-])*[0-9]+");
+          break;
+        default:
+          sb.append("([0-9]{3}\\.[0-9]{3}|[0-9]{10})");
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Write lines that look similar to the words, but are no phone numbers (dates, times, ranges, ...), to a temporary file */
+  public Path negativeLines(int count) throws IOException {
+    Path file = Files.createTempFile("regex-repair-negative", ".txt");
+    file.toFile().deleteOnExit();
+    try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < count; i++) {
+        switch (random.nextInt(4)) {
+          case 0:
+            w.write(String.format("%04d-%02d-%02d", 1900 + random.nextInt(200), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            break;
+          case 1:
+            w.write(String.format("%02d:%02d:%02d", random.nextInt(24), random.nextInt(60), random.nextInt(60)));
+            break;
+          case 2:
+            w.write(random.nextInt(1000) + "-" + random.nextInt(1000));
+            break;
+          default:
+            w.write("page " + random.nextInt(500) + " of " + random.nextInt(500));
+        }
+        w.write('\n');
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,73 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.EmbedInConc;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.Matcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.myers.ArrayMyersMatcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.myers.MyersMatcher;
+
+/** Matching of one word to a regex (the matching phase of the adaptive repairer), for growing word length and number of states */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+  @Param({ "myers", "array" })
+  public String matcher;
+
+  /** Length of the word */
+  @Param({ "16", "64", "256" })
+  public int wordLength;
+
+  /** Number of parts of the regex, see {@link Datasets#regex(int)} */
+  @Param({ "1", "4", "8" })
+  public int regexParts;
+
+  private Expr expr;
+
+  private CompiledMatcher compiled;
+
+  private String word;
+
+  @Setup
+  public void setup() {
+    expr = new EmbedInConc().apply(RegexParser.parse(Datasets.regex(regexParts)));
+    compiled = matcher().compile(expr);
+    word = new Datasets(42).word(wordLength);
+  }
+
+  private Matcher matcher() {
+    return "array".equals(matcher) ? new ArrayMyersMatcher() : new MyersMatcher();
+  }
+
+  @Benchmark
+  public Matching match() {
+    return compiled.match(word);
+  }
+
+  /** Includes the construction of the automaton */
+  @Benchmark
+  public Matching compileAndMatch() {
+    return matcher().compile(expr).match(word);
+  }
+}
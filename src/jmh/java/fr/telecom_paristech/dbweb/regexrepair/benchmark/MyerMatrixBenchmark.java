@@ -0,0 +1,56 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.telecom_paristech.dbweb.regexrepair.simple.MyerMatrix;
+import fr.telecom_paristech.dbweb.regexrepair.simple.Regex;
+import fr.telecom_paristech.dbweb.regexrepair.simple.UpdateFunction;
+
+/** Myers' matrix of the simple repairer, for growing word length and regex size */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MyerMatrixBenchmark {
+
+  /** Length of the word */
+  @Param({ "16", "64", "256" })
+  public int wordLength;
+
+  /** Number of parts of the regex, see {@link Datasets#regex(int)} */
+  @Param({ "1", "4", "16" })
+  public int regexParts;
+
+  private Regex regex;
+
+  private String word;
+
+  private final UpdateFunction updateFunction = new UpdateFunction();
+
+  @Setup
+  public void setup() {
+    // the matrix needs the same character at the start and the end of the word and the regex
+    regex = new Regex("$(" + Datasets.regex(regexParts) + ")$");
+    word = "$" + new Datasets(42).word(wordLength) + "$";
+  }
+
+  @Benchmark
+  public List<Regex> matrix() {
+    return new MyerMatrix(word, regex, updateFunction).matching();
+  }
+}
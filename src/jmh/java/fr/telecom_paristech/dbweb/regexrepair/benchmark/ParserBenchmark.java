@@ -0,0 +1,64 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParseException;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.simple.Regex;
+
+/** Parsing of regexes: the direct parser, the ANTLR grammar, the cached {@link RegexParser#parse(String)}, and the parser of the simple repairer */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+  /** Number of parts of the regex, see {@link Datasets#regex(int)} */
+  @Param({ "1", "4", "16" })
+  public int regexParts;
+
+  private String regex;
+
+  private final RegexParser direct = new RegexParser(), antlr = new RegexParser().directParsing(false);
+
+  @Setup
+  public void setup() {
+    regex = Datasets.regex(regexParts);
+  }
+
+  @Benchmark
+  public Expr direct() throws RegexParseException {
+    return direct.read(regex);
+  }
+
+  @Benchmark
+  public Expr antlr() throws RegexParseException {
+    return antlr.read(regex);
+  }
+
+  /** Includes the copy of the cached tree */
+  @Benchmark
+  public Expr parse() {
+    return RegexParser.parse(regex);
+  }
+
+  @Benchmark
+  public Regex simple() {
+    return new Regex(regex);
+  }
+}
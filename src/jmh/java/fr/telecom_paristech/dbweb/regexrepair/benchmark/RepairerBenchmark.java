@@ -0,0 +1,70 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.AdaptiveRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.iface.CorpusFeedback;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
+import fr.telecom_paristech.dbweb.regexrepair.iface.RegexRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.iface.TimedResult;
+import fr.telecom_paristech.dbweb.regexrepair.simple.adapter.SimpleRepairer;
+
+/**
+ * Repairs a phone number regex with generated phone numbers, end to end.
+ * The feedback is either none (all regexes are allowed), or a corpus of generated negative lines, which is scanned for every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepairerBenchmark {
+
+  @Param({ "adaptive", "simple" })
+  public String repairer;
+
+  @Param({ "none", "corpus" })
+  public String feedback;
+
+  /** Number of words to add */
+  @Param({ "10", "50" })
+  public int words;
+
+  /** Number of lines of the corpus */
+  @Param({ "100000" })
+  public int corpusLines;
+
+  private RegexRepairer regexRepairer;
+
+  private Feedback regexFeedback;
+
+  private List<String> toAdd;
+
+  @Setup
+  public void setup() throws IOException {
+    Datasets data = new Datasets(42);
+    regexRepairer = "simple".equals(repairer) ? new SimpleRepairer() : new AdaptiveRepairer();
+    regexFeedback = "corpus".equals(feedback) ? new CorpusFeedback(data.negativeLines(corpusLines)).maxNegativeRatio(0.01) : Feedback.ALWAYS_TRUE;
+    toAdd = data.phoneNumbers(words);
+  }
+
+  @Benchmark
+  public TimedResult timedRepair() {
+    return regexRepairer.timedRepair(Datasets.PHONE_REGEX, toAdd, regexFeedback);
+  }
+}
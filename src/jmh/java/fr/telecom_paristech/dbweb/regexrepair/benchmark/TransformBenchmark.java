@@ -0,0 +1,100 @@
+package fr.telecom_paristech.dbweb.regexrepair.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.AdaptiveRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.AltToRep;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.CleanUp;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.EmbedInConc;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.FoldRepeat;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.GeneralizeAlt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.Rewriter;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.SimplifyRepeat;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
+
+/**
+ * Each pass of the postprocessing of the adaptive repairer, and the {@link Rewriter} which replaces them.
+ * The input is the tree the repairer has before the postprocessing, obtained with a rewriter without rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+  /** Number of added words */
+  @Param({ "10", "100" })
+  public int words;
+
+  private Expr expr;
+
+  private final Rewriter rewriter = Rewriter.standard();
+
+  @Setup
+  public void setup() {
+    String repaired = new AdaptiveRepairer().rewriting(new Rewriter()).timedRepair(Datasets.PHONE_REGEX, new Datasets(42).phoneNumbers(words),
+        Feedback.ALWAYS_TRUE).expr;
+    expr = RegexParser.parse(repaired);
+  }
+
+  @Benchmark
+  public Expr embedInConc() {
+    return new EmbedInConc().apply(expr);
+  }
+
+  @Benchmark
+  public Expr cleanUp() {
+    return new CleanUp().apply(expr);
+  }
+
+  @Benchmark
+  public Expr simplifyRepeat() {
+    return new SimplifyRepeat().apply(expr);
+  }
+
+  @Benchmark
+  public Expr foldRepeat() {
+    return new FoldRepeat().apply(expr);
+  }
+
+  @Benchmark
+  public Expr generalizeAlt() {
+    return new GeneralizeAlt().apply(expr);
+  }
+
+  @Benchmark
+  public Expr altToRep() {
+    return new AltToRep().apply(expr);
+  }
+
+  /** All passes, as in the postprocessing of the repairer */
+  @Benchmark
+  public Expr postprocess() {
+    Expr e = new CleanUp().apply(expr);
+    e = new SimplifyRepeat().apply(e);
+    e = new FoldRepeat().apply(e);
+    e = new GeneralizeAlt().apply(e);
+    return new AltToRep().apply(e);
+  }
+
+  @Benchmark
+  public Expr rewriter() {
+    return rewriter.apply(expr);
+  }
+}
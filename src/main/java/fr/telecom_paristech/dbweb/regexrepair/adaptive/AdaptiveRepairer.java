@@ -3,14 +3,17 @@ package fr.telecom_paristech.dbweb.regexrepair.adaptive;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -21,6 +24,7 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.ExprPos;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.ExprSnapshot;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.AltToRep;
@@ -29,14 +33,17 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.CopyExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.EmbedInConc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.FoldRepeat;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.GeneralizeAlt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.Rewriter;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.SimplifyRepeat;
 import fr.telecom_paristech.dbweb.regexrepair.data.Span;
 import fr.telecom_paristech.dbweb.regexrepair.helper.RegexTools;
 import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
+import fr.telecom_paristech.dbweb.regexrepair.iface.AsyncFeedback;
 import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
 import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
 import fr.telecom_paristech.dbweb.regexrepair.iface.RegexRepairer;
 import fr.telecom_paristech.dbweb.regexrepair.iface.TimedResult;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher;
 import fr.telecom_paristech.dbweb.regexrepair.matcher.Matcher;
 import fr.telecom_paristech.dbweb.regexrepair.matcher.myers.MyersMatcher;
 
@@ -60,6 +67,15 @@ public class AdaptiveRepairer implements RegexRepairer {
   /** Split quantifiers that are repeated less than this number. E.g. a{10} might become a{4}a{6}, but a{10000} stays a{10000} */
   int splitRepeatUntil = 100;
 
+  /** Pool for matching the words in parallel, null for sequential matching */
+  ForkJoinPool matchPool = null;
+
+  /** Number of missing words whose modifications are sent together to the feedback, assuming that all of them are accepted */
+  int feedbackBatch = 1;
+
+  /** Rules for simplifying the regex, null for the transformations of {@link #postprocess(Expr)} */
+  Rewriter rewriter = null;
+
   public AdaptiveRepairer() {
   }
 
@@ -77,6 +93,31 @@ public class AdaptiveRepairer implements RegexRepairer {
     return this;
   }
 
+  /** Match the words in parallel with the given pool, or sequentially if it is null. Modifies this instance! */
+  public AdaptiveRepairer parallel(ForkJoinPool pool) {
+    this.matchPool = pool;
+    return this;
+  }
+
+  /** Send the modifications of up to n missing words to the feedback at once (see {@link Feedback#allowAll(List)}).
+   * The result is the same as for n = 1, but rejected modifications cause unnecessary feedback calls.
+   * With an {@link AsyncFeedback}, the regex of a word is evaluated while the next words are added, and evaluations after a rejection are cancelled.
+   * Modifies this instance! */
+  public AdaptiveRepairer batching(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("batch size must be positive: " + n);
+    }
+    this.feedbackBatch = n;
+    return this;
+  }
+
+  /** Simplify the regexes with the rules of the rewriter (e.g. {@link Rewriter#standard()} with additional rules),
+   * or with {@link #postprocess(Expr)} if it is null. Modifies this instance! */
+  public AdaptiveRepairer rewriting(Rewriter rewriter) {
+    this.rewriter = rewriter;
+    return this;
+  }
+
   @Override
   public String toString() {
     return info();
@@ -123,6 +164,25 @@ public class AdaptiveRepairer implements RegexRepairer {
     return gaps;
   }
 
+  /** Match the words and find their gaps, in the order of toaddList. Matches in parallel if a pool is set */
+  protected List<Gap> getGaps(Expr expr, CompiledMatcher matcher, List<String> toaddList) {
+    List<Gap> gaps = new ArrayList<>();
+    if (matchPool == null) {
+      for (String toadd : toaddList) {
+        Matching mr = matcher.match(toadd);
+        gaps.addAll(getGaps(expr, mr.str, mr.matches));
+      }
+      return gaps;
+    }
+    // matching and getGaps only read expr; collect keeps the order of toaddList
+    List<List<Gap>> gapsPerWord = matchPool.submit(() -> toaddList.parallelStream().map(toadd -> {
+      Matching mr = matcher.match(toadd);
+      return getGaps(expr, mr.str, mr.matches);
+    }).collect(Collectors.toList())).join();
+    gapsPerWord.forEach(gaps::addAll);
+    return gaps;
+  }
+
   /** Apply some cleanup and simplification steps. */
   protected static Expr postprocess(Expr e) {
     e = new CleanUp().apply(e);
@@ -133,6 +193,24 @@ public class AdaptiveRepairer implements RegexRepairer {
     return e;
   }
 
+  /** Same as {@link #postprocess(Expr)}, but reuses the results of earlier calls for subtrees that didn't change.
+   * The results share nodes, so only use them to get the regex string. */
+  protected static Function<Expr, Expr> incrementalPostprocess() {
+    List<CopyExpr> steps = Arrays.asList(new CleanUp().incremental(), new SimplifyRepeat().incremental(), new FoldRepeat().incremental(),
+        new GeneralizeAlt().incremental(), new AltToRep().incremental());
+    return e -> {
+      for (CopyExpr step : steps) {
+        e = step.apply(e);
+      }
+      return e;
+    };
+  }
+
+  /** Simplify the regex with the rewriter, or {@link #postprocess(Expr)} */
+  protected Expr simplify(Expr e) {
+    return rewriter == null ? postprocess(e) : rewriter.apply(e);
+  }
+
   @Override
   public TimedResult timedRepair(String regex, List<String> toaddList, Feedback feedback) {
     TimedResult r = new TimedResult();
@@ -142,10 +220,8 @@ public class AdaptiveRepairer implements RegexRepairer {
     // matching phase
     List<Gap> gaps = new ArrayList<>();
     r.realTimeMatchPhase = -Tools.nanos();
-    for (String toadd : toaddList) {
-      Matching mr = matcherAlgo.match(expr, toadd);
-      gaps.addAll(getGaps(expr, mr.str, mr.matches));
-    }
+    CompiledMatcher matcher = matcherAlgo.compile(expr);
+    gaps.addAll(getGaps(expr, matcher, toaddList));
     r.realTimeMatchPhase += Tools.nanos();
 
     // fix phase
@@ -155,16 +231,16 @@ public class AdaptiveRepairer implements RegexRepairer {
     addAlternatives(expr, gaps, feedback);
 
     // cleanup and simplify
-    expr = postprocess(expr.getRoot());
+    expr = simplify(expr.getRoot());
 
     r.expr = expr.toRegexString();
     if (!debug) {
       // add those words that where fixing failed
-      List<String> failed = RegexTools.countMatches(r.expr, toaddList).missed;
+      List<String> failed = RegexTools.countMatches(com.google.re2j.Pattern.compile(r.expr), toaddList, matchPool).missed;
 
       if (failed.size() > 0) {
         expr = repairEvilWords(expr, failed, feedback);
-        expr = postprocess(expr.getRoot());
+        expr = simplify(expr.getRoot());
       }
     }
 
@@ -185,20 +261,28 @@ public class AdaptiveRepairer implements RegexRepairer {
     a.addChild(orig);
 
     // for every generalized class
+    List<Expr> refinedExprs = new ArrayList<>();
+    List<String> regexes = new ArrayList<>();
     for (Entry<Expr, List<String>> e : exprToWords.entrySet()) {
       Expr refined = RegexParser
           .parse(RegexTools.refineRegexes(new HashSet<>(Arrays.asList(e.getKey().toRegexString())), e.getValue()).iterator().next());
       a.addChild(refined);
-      String regex = a.toRegexString();
+      refinedExprs.add(refined);
+      regexes.add(a.toRegexString());
+      // check generalized expressions independently, to keep regex short
+      a.removeLastChild();
+    }
 
-      // Check whether generalized version is acceptable
-      if (f.allow(regex)) {
-        goodExpr.add(refined);
+    // Check whether generalized versions are acceptable
+    List<Boolean> allowed = f.allowAll(regexes);
+    int i = 0;
+    for (List<String> words : exprToWords.values()) {
+      if (allowed.get(i)) {
+        goodExpr.add(refinedExprs.get(i));
       } else {
-        veryEvilWords.addAll(e.getValue());
+        veryEvilWords.addAll(words);
       }
-      // check generalized expressions independently, to keep regex short
-      a.removeLastChild();
+      i++;
     }
 
     // build the final regex
@@ -502,14 +586,15 @@ public class AdaptiveRepairer implements RegexRepairer {
     // but checking each individually doesn't decrease performance
     // e.g. a.*b
 
-    // check for unchangeable secondary alts
-    Set<Alt> unchangeable = new HashSet<>();
+    // simplifies the regexes for the feedback
+    Function<Expr, Expr> postprocess = rewriter == null ? incrementalPostprocess() : rewriter::apply;
+
+    // check for unchangeable secondary alts, all at once as the expression does not change meanwhile
+    Set<Alt> secondaryAlts = new LinkedHashSet<>();
+    gaps.forEach(g -> secondaryAlts.addAll(g.secondaryAlts));
+    Set<Alt> unchangeable = getUnchangeable(secondaryAlts, feedback, postprocess);
     Set<String> evilWords = new HashSet<>();
     for (Gap g : gaps) {
-      if (evilWords.contains(g.missingWord)) {
-        continue;
-      }
-      unchangeable.addAll(getUnchangeable(g.secondaryAlts, feedback));
       if (!Collections.disjoint(unchangeable, g.secondaryAlts)) {
         evilWords.add(g.missingWord);
       }
@@ -517,10 +602,13 @@ public class AdaptiveRepairer implements RegexRepairer {
     gaps.removeIf(gap -> evilWords.contains(gap.missingWord));
 
     // check for unchangeable primary alts
+    Set<Alt> primaryAlts = new LinkedHashSet<>();
+    gaps.stream().filter(g -> g.primaryAlts.size() > 1).forEach(g -> primaryAlts.addAll(g.primaryAlts));
+    unchangeable = getUnchangeable(primaryAlts, feedback, postprocess);
     for (Gap gap : gaps) {
       // if we have exactly one unchangeable alt, we can add the missing part to it, if it's not empty
       if (gap.primaryAlts.size() > 1) {
-        gap.primaryAlts.removeAll(getUnchangeable(gap.primaryAlts, feedback));
+        gap.primaryAlts.removeAll(unchangeable);
       }
 
       // check whether we can add the missing part
@@ -535,85 +623,132 @@ public class AdaptiveRepairer implements RegexRepairer {
       missingWordToGaps.computeIfAbsent(gap.missingWord, k -> new ArrayList<>()).add(gap);
     }
 
-    // try to repair word by word
-    for (String missingWord : missingWordToGaps.keySet()) {
-      // memorize expressions added to alternatives, used to remove it later
-      Map<Alt, List<Expr>> altToNewExpr = new HashMap<>();
-      List<Gap> fs = missingWordToGaps.get(missingWord);
-      for (Gap gap : fs) {
-        gap.secondaryAlts.forEach(alt -> addToAlt(alt, new Conc(), altToNewExpr));
-
-        // search candidate, prefer alts closer to root
-        if (gap.primaryAlts.size() > 0) {
-          Alt best = null;
-          for (Alt alt : gap.primaryAlts) {
-            if (best == null || alt.depth() < best.depth()) {
-              best = alt;
-            }
-          }
-
-          addToAlt(best, Expr.textExpr(gap.toAdd), altToNewExpr);
-          if (best.getChildren().size() == 1) {
-            addToAlt(best, new Conc(), altToNewExpr);
+    // try to repair word by word, sending the modified regexes of several words at once to the feedback
+    // the modifications are made on snapshots, and only the accepted ones are applied to the expression
+    List<String> missingWords = new ArrayList<>(missingWordToGaps.keySet());
+    for (int start = 0; start < missingWords.size();) {
+      int end = Math.min(start + (feedback == null ? missingWords.size() : feedbackBatch), missingWords.size());
+      List<ExprSnapshot> snapshots = new ArrayList<>();
+      ExprSnapshot snapshot = new ExprSnapshot(expr.getRoot());
+      List<String> regexes = new ArrayList<>();
+      List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+      for (String missingWord : missingWords.subList(start, end)) {
+        snapshot = addWord(missingWordToGaps.get(missingWord), snapshot);
+        snapshots.add(snapshot);
+        if (feedback != null) {
+          Expr e = postprocess.apply(snapshot.getRoot());
+          if (feedback instanceof AsyncFeedback) {
+            futures.add(((AsyncFeedback) feedback).allowAsync(e.toRegexString()));
+          } else {
+            regexes.add(e.toRegexString());
           }
-
-          Alt tmp = best;
-          gap.primaryAlts.forEach(a -> {
-            if (a != tmp) {
-              addToAlt(a, new Conc(), altToNewExpr);
-            }
-          });
         }
       }
 
-      Expr e = postprocess(expr.getRoot()); // don't use expr = .... here, 
-      boolean allow = feedback == null || feedback.allow(e.toRegexString());
+      // the modifications after a rejected word were based on the wrong expression, so we drop them and try again
+      List<Boolean> allowed;
+      if (feedback == null) {
+        allowed = Collections.nCopies(end - start, true);
+      } else if (feedback instanceof AsyncFeedback) {
+        allowed = untilRejected(futures);
+      } else {
+        allowed = feedback.allowAll(regexes);
+      }
+      int rejected = allowed.indexOf(false);
+      int accepted = rejected < 0 ? end - start : rejected;
+      if (accepted > 0) {
+        snapshots.get(accepted - 1).apply();
+      }
+      if (rejected < 0) {
+        start = end;
+        continue;
+      }
+      evilWords.add(missingWords.get(start + rejected));
+      start += rejected + 1;
+    }
+
+    return new ArrayList<>(evilWords);
+
+  }
 
+  /** Wait for the answers in order, until the first rejection. Cancels the remaining evaluations. */
+  private static List<Boolean> untilRejected(List<CompletableFuture<Boolean>> futures) {
+    List<Boolean> result = new ArrayList<>();
+    for (CompletableFuture<Boolean> future : futures) {
+      boolean allow = future.join();
+      result.add(allow);
       if (!allow) {
-        evilWords.add(missingWord);
-        // undo changes
-        for (Alt a : altToNewExpr.keySet()) {
-          List<Expr> children = new ArrayList<>(a.getChildren());
-          children.removeAll(altToNewExpr.get(a));
-          a.replaceChildren(children);
-        }
+        futures.forEach(f -> f.cancel(true));
+        break;
       }
     }
+    return result;
+  }
 
-    return new ArrayList<>(evilWords);
+  /** Modify a snapshot of the expression for the gaps of a missing word
+   * @return the modified snapshot */
+  private ExprSnapshot addWord(List<Gap> fs, ExprSnapshot s) {
+    for (Gap gap : fs) {
+      for (Alt alt : gap.secondaryAlts) {
+        s = addToAlt(alt, new Conc(), s);
+      }
+
+      // search candidate, prefer alts closer to root
+      if (gap.primaryAlts.size() > 0) {
+        Alt best = null;
+        for (Alt alt : gap.primaryAlts) {
+          if (best == null || alt.depth() < best.depth()) {
+            best = alt;
+          }
+        }
+
+        s = addToAlt(best, Expr.textExpr(gap.toAdd), s);
+        if (((AggExpr) s.get(best)).getChildren().size() == 1) {
+          s = addToAlt(best, new Conc(), s);
+        }
+
+        for (Alt a : gap.primaryAlts) {
+          if (a != best) {
+            s = addToAlt(a, new Conc(), s);
+          }
+        }
+      }
+    }
 
+    return s;
   }
 
   /** Get a list of "unchangeable" disjunction nodes.
    * Adding an empty alternative to those nodes leads to a bad regex, so it should be avoided. */
-  private Set<Alt> getUnchangeable(Set<Alt> alts, Feedback feedback) {
+  private Set<Alt> getUnchangeable(Set<Alt> alts, Feedback feedback, Function<Expr, Expr> postprocess) {
     Set<Alt> unchangeable = new HashSet<>();
-    if (feedback != null) {
-      for (Alt alt : alts) {
-        if (alt != null) {
-          alt.addChild(new Conc());
-        }
-        Expr e = postprocess(alt.getRoot());
-        if (!feedback.allow(e.toRegexString())) {
-          unchangeable.add(alt);
+    if (feedback != null && !alts.isEmpty()) {
+      // generate the candidates first, and check them together
+      List<Alt> altList = new ArrayList<>(alts);
+      List<String> regexes = new ArrayList<>();
+      for (Alt alt : altList) {
+        ExprSnapshot s = new ExprSnapshot(alt.getRoot()).addChild(alt, new Conc());
+        regexes.add(postprocess.apply(s.getRoot()).toRegexString());
+      }
+      List<Boolean> allowed = feedback.allowAll(regexes);
+      for (int i = 0; i < altList.size(); i++) {
+        if (!allowed.get(i)) {
+          unchangeable.add(altList.get(i));
         }
-        // undo
-        alt.removeLastChild();
       }
     }
     return unchangeable;
   }
 
-  /** Add e as alternative to a, tracking changes */
-  private void addToAlt(Alt a, Expr e, Map<Alt, List<Expr>> changed) {
+  /** Add e as alternative to a in a snapshot */
+  private ExprSnapshot addToAlt(Alt a, Expr e, ExprSnapshot s) {
     // if e is empty, only add if necessary
     if (e instanceof Conc && ((AggExpr) e).getChildren().size() == 0) {
-      if (a.acceptsEmptyWord()) {
-        return;
+      if (s.get(a).acceptsEmptyWord()) {
+        return s;
       }
     }
-    a.addChild(e);
-    changed.computeIfAbsent(a, k -> new ArrayList<>(1)).add(e);
+    return s.addChild(a, e);
   }
 
 }
@@ -23,6 +23,7 @@ public abstract class AggExpr extends Expr {
   public void addChild(Expr expr) {
     this.children.add(expr);
     expr.parent = this;
+    modified();
   }
 
   /** Add all expressions as children */
@@ -31,6 +32,7 @@ public abstract class AggExpr extends Expr {
     for (Expr e : children) {
       e.parent = this;
     }
+    modified();
   }
 
   /** Remove current children, add argument as new children */
@@ -42,6 +44,7 @@ public abstract class AggExpr extends Expr {
     for (Expr e : children) {
       e.parent = this;
     }
+    modified();
     this.debug();
   }
 
@@ -53,6 +56,7 @@ public abstract class AggExpr extends Expr {
         newChild.parent = this;
         children.set(i, newChild);
         child.parent = null;
+        modified();
       }
     }
   }
@@ -61,6 +65,7 @@ public abstract class AggExpr extends Expr {
   public void removeLastChild() {
     if (children.size() > 0) {
       children.remove(children.size() - 1).parent = null;
+      modified();
     }
   }
 
@@ -70,6 +75,7 @@ public abstract class AggExpr extends Expr {
       e.parent = null;
     }
     this.children.clear();
+    modified();
   }
 
   @Override
@@ -132,12 +138,16 @@ public abstract class AggExpr extends Expr {
    * Helper method for child classes. Initialize the string builder with prefix, 
    * initialize children (and add the delimiter and parentheses if necessary),
    * and finish by adding the suffix.
+   * Without modifier the result is cached until the subtree changes.
    * @param sb
    * @param prefix
    * @param delimiter
    * @param suffix
    */
   protected String toRegexString(String prefix, String delimiter, String suffix, ToStringModifier m) {
+    if (m == null && regex != null) {
+      return regex;
+    }
     StringBuilder sb = new StringBuilder();
 
     sb.append(prefix);
@@ -173,7 +183,6 @@ public abstract class AggExpr extends Expr {
         }
       }
 
-      child.toRegexString(m);
       if (needsParentheses) {
         sb.append("(");
       }
@@ -184,7 +193,34 @@ public abstract class AggExpr extends Expr {
     }
     sb.append(suffix);
 
-    return ToStringModifier.apply(m, this, sb.toString());
+    if (m == null) {
+      regex = sb.toString();
+      return regex;
+    }
+    return m.apply(this, sb.toString());
+  }
+
+  @Override
+  protected int computeStructuralHash() {
+    int h = getClass().getName().hashCode();
+    for (Expr child : children) {
+      h = 31 * h + child.structuralHash();
+    }
+    return h;
+  }
+
+  @Override
+  protected boolean sameStructure(Expr other) {
+    List<Expr> otherChildren = ((AggExpr) other).children;
+    if (children.size() != otherChildren.size()) {
+      return false;
+    }
+    for (int i = 0; i < children.size(); i++) {
+      if (!children.get(i).structuralEquals(otherChildren.get(i))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
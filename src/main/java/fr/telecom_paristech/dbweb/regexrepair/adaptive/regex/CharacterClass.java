@@ -1,6 +1,7 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.regex;
 
 import java.util.List;
+import java.util.Objects;
 
 import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
 
@@ -28,6 +29,16 @@ public class CharacterClass extends Expr {
     return ToStringModifier.apply(m, this, content);
   }
 
+  @Override
+  protected int computeStructuralHash() {
+    return 37 * Objects.hashCode(content) + 2;
+  }
+
+  @Override
+  protected boolean sameStructure(Expr other) {
+    return Objects.equals(content, ((CharacterClass) other).content);
+  }
+
   @Override
   public int height() {
     return 0;
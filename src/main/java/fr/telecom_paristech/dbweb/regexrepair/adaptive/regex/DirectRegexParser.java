@@ -0,0 +1,275 @@
+package fr.telecom_paristech.dbweb.regexrepair.adaptive.regex;
+
+/**
+ * Recursive descent parser that builds the expression tree in one pass over the string.
+ * It produces the same trees as the ANTLR grammar of {@link RegexParser}, but only supports the common syntax:
+ * literals, escapes like \d or \., character classes, groups, (?:...), alternatives, and quantifiers.
+ * For everything else (look arounds, back references, \Q...\E, \p{..}, syntax errors, ...) it gives up,
+ * and the regex should be parsed by the grammar.
+ */
+public class DirectRegexParser {
+
+  /** Thrown if the regex uses syntax that is not supported */
+  private static class Unsupported extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final Unsupported UNSUPPORTED = new Unsupported();
+
+  /** Escaped letters that the grammar transforms to text */
+  private static final String TEXT_ESCAPES = "dDhHNRsSvVwWaefnrt";
+
+  /** Escaped letters that the grammar transforms to character classes (anchors etc.) */
+  private static final String CLASS_ESCAPES = "bBAzZGKCX";
+
+  /** Escaped letters that are allowed in character classes (others may start a longer token, e.g. \x41 or \p{L}) */
+  private static final String CLASS_MEMBER_ESCAPES = "dDhHNRsSvVwWaefnrtb";
+
+  private final String s;
+
+  private int pos = 0;
+
+  private DirectRegexParser(String s) {
+    this.s = s;
+  }
+
+  /** Parse a regex, or return null if the syntax is not supported */
+  public static Expr parse(String s) {
+    DirectRegexParser p = new DirectRegexParser(s);
+    try {
+      Expr e = p.alternation();
+      return p.pos == s.length() ? e : null;
+    } catch (Unsupported e) {
+      return null;
+    }
+  }
+
+  /** alternation: expr ('|' expr)* */
+  private Expr alternation() {
+    Expr first = expr();
+    if (!peek('|')) {
+      return first;
+    }
+    Alt alt = new Alt();
+    alt.addChild(first);
+    while (peek('|')) {
+      pos++;
+      alt.addChild(expr());
+    }
+    return alt;
+  }
+
+  /** expr: element* */
+  private Expr expr() {
+    Expr first = null;
+    Conc conc = null;
+    while (pos < s.length() && !peek('|') && !peek(')')) {
+      Expr e = element();
+      if (first == null) {
+        first = e;
+      } else {
+        if (conc == null) {
+          conc = new Conc();
+          conc.addChild(first);
+        }
+        conc.addChild(e);
+      }
+    }
+    if (conc != null) {
+      return conc;
+    }
+    return first == null ? new Conc() : first;
+  }
+
+  /** element: atom quantifier? */
+  private Expr element() {
+    Expr atom = atom();
+    Repeat r = quantifier();
+    if (r == null) {
+      return atom;
+    }
+    r.addChild(atom);
+    return r;
+  }
+
+  /** quantifier: ('?' | '+' | '*' | '{' number (',' number?)? '}') ('+' | '?')? */
+  private Repeat quantifier() {
+    if (pos >= s.length()) {
+      return null;
+    }
+    Repeat r;
+    char c = s.charAt(pos);
+    if (c == '?') {
+      r = new Repeat(0, 1);
+      pos++;
+    } else if (c == '+') {
+      r = new Repeat(1, Repeat.STAR);
+      pos++;
+    } else if (c == '*') {
+      r = new Repeat(0, Repeat.STAR);
+      pos++;
+    } else if (c == '{') {
+      r = bounds();
+      if (r == null) {
+        return null;
+      }
+    } else {
+      return null;
+    }
+    // lazy and possessive quantifiers are treated as greedy ones
+    if (peek('?') || peek('+')) {
+      pos++;
+    }
+    if (pos < s.length() && "?+*".indexOf(s.charAt(pos)) >= 0) {
+      throw UNSUPPORTED;
+    }
+    return r;
+  }
+
+  /** {n}, {n,}, or {n,m}, otherwise null (then the brace is a literal) */
+  private Repeat bounds() {
+    int i = pos + 1;
+    int minEnd = digits(i);
+    if (minEnd == i) {
+      return null;
+    }
+    int min = number(i, minEnd), max = min;
+    i = minEnd;
+    if (i < s.length() && s.charAt(i) == ',') {
+      int maxEnd = digits(i + 1);
+      max = maxEnd == i + 1 ? Repeat.STAR : number(i + 1, maxEnd);
+      i = maxEnd;
+    }
+    if (i >= s.length() || s.charAt(i) != '}') {
+      return null;
+    }
+    pos = i + 1;
+    Repeat r = new Repeat();
+    r.setMin(min);
+    r.setMax(max);
+    return r;
+  }
+
+  private int digits(int i) {
+    while (i < s.length() && '0' <= s.charAt(i) && s.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+
+  private int number(int start, int end) {
+    if (end - start > 9) {
+      throw UNSUPPORTED;
+    }
+    return Integer.parseInt(s.substring(start, end));
+  }
+
+  private Expr atom() {
+    char c = s.charAt(pos);
+    switch (c) {
+    case '(':
+      return group();
+    case '[':
+      return characterClass();
+    case '\\':
+      return escape();
+    case '.':
+    case '^':
+    case '$':
+    case ']':
+      pos++;
+      return new CharacterClass(String.valueOf(c));
+    case '?':
+    case '+':
+    case '*':
+    case ')':
+    case '|':
+      throw UNSUPPORTED;
+    default:
+      pos++;
+      return new Text(String.valueOf(c), false);
+    }
+  }
+
+  /** '(' alternation ')' or '(?:' alternation ')' */
+  private Expr group() {
+    pos++;
+    if (peek('?')) {
+      if (pos + 1 < s.length() && s.charAt(pos + 1) == ':') {
+        pos += 2;
+      } else {
+        throw UNSUPPORTED;
+      }
+    } else if (peek('*')) {
+      throw UNSUPPORTED;
+    }
+    Expr e = alternation();
+    if (!peek(')')) {
+      throw UNSUPPORTED;
+    }
+    pos++;
+    return e;
+  }
+
+  private Expr escape() {
+    if (pos + 1 >= s.length()) {
+      throw UNSUPPORTED;
+    }
+    char c = s.charAt(pos + 1);
+    String token = s.substring(pos, pos + 2);
+    if (TEXT_ESCAPES.indexOf(c) >= 0 || !isAlphaNum(c)) {
+      pos += 2;
+      return new Text(token, false);
+    }
+    if (CLASS_ESCAPES.indexOf(c) >= 0) {
+      pos += 2;
+      return new CharacterClass(token);
+    }
+    throw UNSUPPORTED;
+  }
+
+  /** '[' '^'? member+ ']', kept as text */
+  private Expr characterClass() {
+    int start = pos;
+    int i = pos + 1;
+    if (i < s.length() && s.charAt(i) == '^') {
+      i++;
+    }
+    int first = i;
+    while (i < s.length() && s.charAt(i) != ']') {
+      char c = s.charAt(i);
+      if (c == '[') {
+        throw UNSUPPORTED;
+      }
+      if (c == '\\') {
+        if (i + 1 >= s.length()) {
+          throw UNSUPPORTED;
+        }
+        char e = s.charAt(i + 1);
+        if (isAlphaNum(e) && CLASS_MEMBER_ESCAPES.indexOf(e) < 0) {
+          throw UNSUPPORTED;
+        }
+        i++;
+      }
+      i++;
+    }
+    if (i == first || i >= s.length()) {
+      throw UNSUPPORTED;
+    }
+    pos = i + 1;
+    return new CharacterClass(s.substring(start, pos));
+  }
+
+  private boolean peek(char c) {
+    return pos < s.length() && s.charAt(pos) == c;
+  }
+
+  private static boolean isAlphaNum(char c) {
+    return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || ('0' <= c && c <= '9');
+  }
+}
@@ -16,6 +16,15 @@ public abstract class Expr implements Cloneable {
   /** Store parent node */
   protected AggExpr parent = null;
 
+  /** Incremented whenever this subtree changes */
+  private long version = 0;
+
+  /** Cached result of {@link #toRegexString()}, reset whenever this subtree changes */
+  String regex = null;
+
+  /** Cached result of {@link #structuralHash()}, 0 if not yet computed */
+  int hash = 0;
+
   /** Transform string to regex, that matches exactly that string */
   public static Expr textExpr(String s) {
     if (s.length() == 1) {
@@ -47,6 +56,23 @@ public abstract class Expr implements Cloneable {
     return 0;
   }
 
+  /** A number that changes whenever this node or one of its descendants is modified */
+  public long version() {
+    return version;
+  }
+
+  /** Update the version of this node and its ancestors, and invalidate their cached strings and hashes */
+  protected void modified() {
+    for (Expr expr = this;; expr = expr.parent) {
+      expr.version++;
+      expr.regex = null;
+      expr.hash = 0;
+      if (expr.isRoot()) {
+        break;
+      }
+    }
+  }
+
   /** Get parent node */
   public AggExpr getParent() {
     return parent;
@@ -101,6 +127,8 @@ public abstract class Expr implements Cloneable {
     try {
       Expr expr = (Expr) super.clone();
       expr.parent = null;
+      expr.regex = null;
+      expr.hash = 0;
       return expr;
     } catch (Exception e) {
       return null;
@@ -117,6 +145,43 @@ public abstract class Expr implements Cloneable {
     }
   }
 
+  /**
+   * Hash code of the structure of this subtree, i.e. the types of the nodes, their texts and quantifiers.
+   * Doesn't depend on the identity of the nodes, so it can be used for hashing subtrees which are equal (see {@link #structuralEquals(Expr)}).
+   */
+  public int structuralHash() {
+    int h = hash;
+    if (h == 0) {
+      h = computeStructuralHash();
+      if (h == 0) {
+        h = 1;
+      }
+      hash = h;
+    }
+    return h;
+  }
+
+  /** Compute the structural hash of this subtree, see {@link #structuralHash()} */
+  protected abstract int computeStructuralHash();
+
+  /**
+   * Whether the other subtree has the same structure, i.e. the same types of nodes, texts and quantifiers.
+   * Subtrees with the same structure have the same regex string.
+   * (Expr doesn't override equals and hashCode, because the trees are often stored in identity based maps.)
+   */
+  public boolean structuralEquals(Expr other) {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || getClass() != other.getClass() || structuralHash() != other.structuralHash()) {
+      return false;
+    }
+    return sameStructure(other);
+  }
+
+  /** Compare the structure with another subtree of the same class, see {@link #structuralEquals(Expr)} */
+  protected abstract boolean sameStructure(Expr other);
+
   /** Interface for transforming regex tree */
   public interface Transform {
 
@@ -181,9 +246,9 @@ public abstract class Expr implements Cloneable {
     throw new UnsupportedOperationException(this.getClass().toString());
   }
 
-  /** Constructs a string representation of the regex */
+  /** Constructs a string representation of the regex. The result is cached until the subtree changes. */
   public final String toRegexString() {
-    return toRegexString((Expr) null);
+    return toRegexString((ToStringModifier) null);
   }
 
   /** Constructs a string representation of the regex, highlighting the sub expression 'mark' */
@@ -103,8 +103,8 @@ public class ExprPos implements Comparable<ExprPos> {
 
   @Override
   public int hashCode() {
-    // use toRegexString to make hashing independent of addr of expr
-    return 19 + (expr == null ? 1 : Objects.hashCode(expr.toRegexString(expr))) * 31 + 17 * Objects.hashCode(rep);
+    // use structuralHash to make hashing independent of addr of expr
+    return 19 + (expr == null ? 1 : expr.structuralHash()) * 31 + 17 * Objects.hashCode(rep);
   }
 
   /** Get quantifiers wrapped around this position */
@@ -0,0 +1,196 @@
+package fr.telecom_paristech.dbweb.regexrepair.adaptive.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable version of a regex tree with some children added, used to evaluate candidate modifications without changing the tree.
+ * Adding a child copies only the path from the modified node to the root; all other subtrees are shared with the original tree.
+ * The snapshots share their bookkeeping too, so a modification costs O(depth) regardless of the number of previous modifications.
+ * Rolling back a modification is free, and several snapshots can be rendered or transformed at the same time.
+ *
+ * The shared subtrees still belong to the original tree (their parent is the original node), so snapshots are only valid until the original
+ * tree changes, and their nodes must not be modified. Use {@link #apply()} to perform the modifications on the original tree.
+ */
+public class ExprSnapshot {
+
+  /** Root of the original tree */
+  private final Expr root;
+
+  /** Original node to its copy in this snapshot */
+  private final Copies copies;
+
+  /** Added children, the last modification first; null if there are none */
+  private final Added added;
+
+  /** A modification, linked to the previous ones */
+  private static class Added {
+
+    private final AggExpr parent;
+
+    private final Expr child;
+
+    private final Added previous;
+
+    Added(AggExpr parent, Expr child, Added previous) {
+      this.parent = parent;
+      this.child = child;
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * Persistent map from original nodes (by identity) to their copies: a trie over the identity hash, with 4 bits per level.
+   * Adding an entry copies only the path to it, so the snapshots derived from each other share most of their maps.
+   */
+  private static class Copies {
+
+    private static final Copies EMPTY = new Copies(new Object[16]);
+
+    /** Sub-tries or entries, indexed by 4 bits of the hash */
+    private final Object[] slots;
+
+    private Copies(Object[] slots) {
+      this.slots = slots;
+    }
+
+    Expr get(Expr key) {
+      int hash = System.identityHashCode(key);
+      Copies trie = this;
+      for (int shift = 0;; shift += 4) {
+        Object slot = trie.slots[(hash >>> shift) & 15];
+        if (slot instanceof Copies) {
+          trie = (Copies) slot;
+          continue;
+        }
+        for (Entry e = (Entry) slot; e != null; e = e.next) {
+          if (e.key == key) {
+            return e.value;
+          }
+        }
+        return null;
+      }
+    }
+
+    Copies put(Expr key, Expr value) {
+      return put(new Entry(key, value, null), System.identityHashCode(key), 0);
+    }
+
+    private Copies put(Entry entry, int hash, int shift) {
+      int i = (hash >>> shift) & 15;
+      Object[] slots = this.slots.clone();
+      Object slot = slots[i];
+      if (slot instanceof Copies) {
+        slots[i] = ((Copies) slot).put(entry, hash, shift + 4);
+      } else if (slot == null || ((Entry) slot).key == entry.key) {
+        slots[i] = entry;
+      } else if (shift < 28) {
+        // two keys share the prefix of their hashes, so split the slot (the entry in it is alone)
+        Entry other = (Entry) slot;
+        slots[i] = EMPTY.put(other, System.identityHashCode(other.key), shift + 4).put(entry, hash, shift + 4);
+      } else {
+        // same hash, keep the other keys in a list
+        Entry list = new Entry(entry.key, entry.value, null);
+        for (Entry e = (Entry) slot; e != null; e = e.next) {
+          if (e.key != entry.key) {
+            list = new Entry(e.key, e.value, list);
+          }
+        }
+        slots[i] = list;
+      }
+      return new Copies(slots);
+    }
+  }
+
+  private static class Entry {
+
+    private final Expr key, value;
+
+    private final Entry next;
+
+    Entry(Expr key, Expr value, Entry next) {
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  public ExprSnapshot(Expr root) {
+    this(root, Copies.EMPTY, null);
+  }
+
+  private ExprSnapshot(Expr root, Copies copies, Added added) {
+    this.root = root;
+    this.copies = copies;
+    this.added = added;
+  }
+
+  /** Root of the snapshot */
+  public Expr getRoot() {
+    return get(root);
+  }
+
+  /** Version of an original node in this snapshot */
+  public Expr get(Expr original) {
+    Expr copy = copies.get(original);
+    return copy == null ? original : copy;
+  }
+
+  /** Whether the snapshot has no modifications */
+  public boolean isEmpty() {
+    return added == null;
+  }
+
+  /**
+   * New snapshot where child is added to the (already modified) version of an original node.
+   * The child must be a new node, which doesn't belong to a tree yet.
+   */
+  public ExprSnapshot addChild(AggExpr original, Expr child) {
+    Copies newCopies = copies;
+    AggExpr old = (AggExpr) get(original);
+    List<Expr> children = new ArrayList<>(old.children.size() + 1);
+    children.addAll(old.children);
+    children.add(child);
+    Expr node = copy(old, children);
+
+    // copy the ancestors, replacing the previous version of the child while copying the children
+    for (Expr expr = original;; expr = expr.parent) {
+      Expr previous = get(expr);
+      newCopies = newCopies.put(expr, node);
+      if (expr == root || expr.isRoot()) {
+        break;
+      }
+      AggExpr parent = (AggExpr) get(expr.parent);
+      children = new ArrayList<>(parent.children.size());
+      for (Expr c : parent.children) {
+        children.add(c == previous ? node : c);
+      }
+      node = copy(parent, children);
+    }
+
+    return new ExprSnapshot(root, newCopies, new Added(original, child, added));
+  }
+
+  /** Add the children to the original tree. Afterwards this snapshot and the ones derived from the same tree are invalid. */
+  public void apply() {
+    List<Added> modifications = new ArrayList<>();
+    for (Added a = added; a != null; a = a.previous) {
+      modifications.add(a);
+    }
+    for (int i = modifications.size() - 1; i >= 0; i--) {
+      modifications.get(i).parent.addChild(modifications.get(i).child);
+    }
+  }
+
+  /** Copy a node with other children. The shared children keep their parent, the others are adopted. */
+  private static AggExpr copy(AggExpr node, List<Expr> children) {
+    AggExpr copy = (AggExpr) node.clone();
+    copy.children = children;
+    for (Expr child : children) {
+      if (child.parent == null) {
+        child.parent = copy;
+      }
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,23 @@
+package fr.telecom_paristech.dbweb.regexrepair.adaptive.regex;
+
+import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
+
+/**
+ * Thrown if a string cannot be parsed to a regex.
+ */
+public class RegexParseException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String regex;
+
+  public RegexParseException(String regex, String message, Throwable cause) {
+    super("cannot parse regex " + Tools.asJavaString(regex) + ": " + message, cause);
+    this.regex = regex;
+  }
+
+  /** The regex that could not be parsed */
+  public String getRegex() {
+    return regex;
+  }
+}
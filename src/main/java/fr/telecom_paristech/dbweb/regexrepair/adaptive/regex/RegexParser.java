@@ -1,13 +1,21 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.regex;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNodeImpl;
 import org.slf4j.Logger;
@@ -16,46 +24,163 @@ import org.slf4j.LoggerFactory;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.parser.RegexGrammarLexer;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.parser.RegexGrammarParser;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.parser.RegexGrammarParser.Shared_atomContext;
-import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
 
 /**
  * Parse a regular expression to an abstract syntax tree.
  * It uses the grammar from https://github.com/bkiers/pcre-parser
+ *
+ * Common regexes are parsed by {@link DirectRegexParser}, which is faster and produces the same trees.
+ * An instance reuses its lexer and parser for all regexes, so it must not be used by several threads at the same time.
+ * The static methods use one instance per thread, and share a cache of parsed regexes.
  */
 public class RegexParser {
 
   private final static Logger log = LoggerFactory.getLogger(RegexParser.class);
 
-  private static ParseTree parseToTree(String s) {
+  /** Default number of parsed regexes that are kept by {@link #parseChecked(String)} */
+  public final static int CACHE_CAPACITY = 1000;
+
+  private final static ThreadLocal<RegexParser> parsers = ThreadLocal.withInitial(RegexParser::new);
+
+  /** Regex string to parsed expression (template), least recently used first; the templates are never modified */
+  private static volatile Map<String, Expr> cache = createCache(CACHE_CAPACITY);
+
+  /** Thrown by the error listener, to stop at the first syntax error */
+  private static class SyntaxError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    SyntaxError(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  private final static BaseErrorListener THROWING_LISTENER = new BaseErrorListener() {
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg,
+        RecognitionException e) {
+      // subtract the added parenthesis
+      throw new SyntaxError("position " + (charPositionInLine - 1) + ": " + msg, e);
+    }
+  };
+
+  private final RegexGrammarLexer lexer = new RegexGrammarLexer(null);
+
+  private final RegexGrammarParser parser = new RegexGrammarParser(null);
+
+  /** Whether to try the {@link DirectRegexParser} before the grammar */
+  private boolean direct = true;
+
+  public RegexParser() {
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(THROWING_LISTENER);
+    parser.removeErrorListeners();
+    parser.addErrorListener(THROWING_LISTENER);
+  }
+
+  /**
+   * Whether to try the {@link DirectRegexParser} before the grammar (default: true).
+   * Modifies this instance!
+   */
+  public RegexParser directParsing(boolean direct) {
+    this.direct = direct;
+    return this;
+  }
+
+  /**
+   * Parse with the faster SLL prediction first, stopping at the first error.
+   * SLL might fail for valid regexes, so if it fails, parse again with full LL prediction, which reports the syntax errors.
+   * (The generated lexer and parser throw a RuntimeException for syntax errors.)
+   */
+  private ParseTree parseToTree(String s) {
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.setErrorHandler(new BailErrorStrategy());
+    try {
+      return parseToTree(s, parser);
+    } catch (RuntimeException e) {
+      log.trace("SLL parsing failed for {}: {}", s, e);
+    }
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    parser.setErrorHandler(new DefaultErrorStrategy());
+    return parseToTree(s, parser);
+  }
+
+  private ParseTree parseToTree(String s, RegexGrammarParser parser) {
     // adding (regex) fixes parsing of a|b
-    CharStream input = new ANTLRInputStream("(" + s + ")");
-    RegexGrammarLexer lexer = new RegexGrammarLexer(input);
-    CommonTokenStream tokens = new CommonTokenStream(lexer);
-    RegexGrammarParser parser = new RegexGrammarParser(tokens);
-    RegexGrammarParser.ExprContext tree = null;
+    lexer.setInputStream(new ANTLRInputStream("(" + s + ")"));
+    parser.setInputStream(new CommonTokenStream(lexer));
+    return parser.expr();
+  }
+
+  /** Parse a String to a Regex.Expr tree, with this instance (without cache) */
+  public Expr read(String s) throws RegexParseException {
+    if (direct) {
+      Expr e = DirectRegexParser.parse(s);
+      if (e != null) {
+        return e;
+      }
+    }
     try {
-      tree = parser.expr();
-    } catch (Exception e) {
-      log.error("Cannot parse regex " + Tools.asJavaString(s));
-      e.printStackTrace();
-      System.exit(0);
+      return RegexParser.transform(parseToTree(s));
+    } catch (RuntimeException e) {
+      boolean syntaxError = e instanceof SyntaxError || e.getClass() == RuntimeException.class;
+      throw new RegexParseException(s, syntaxError ? e.getMessage() : e.toString(), e);
     }
-    return tree;
   }
 
-  /** Parse a String to a Regex.Expr tree */
-  public static Expr parse(String s) {
+  /** Parse a String to a Regex.Expr tree. Every call returns a new tree, which can be modified. */
+  public static Expr parseChecked(String s) throws RegexParseException {
+    Map<String, Expr> c = cache;
+    Expr template = c == null ? null : c.get(s);
+    if (template == null) {
+      template = parsers.get().read(s);
+      if (c == null) {
+        return template;
+      }
+      c.put(s, template);
+    }
+    return copy(template);
+  }
+
+  private static Expr copy(Expr expr) {
+    Expr copy = expr.clone();
+    if (expr instanceof AggExpr) {
+      for (Expr child : ((AggExpr) expr).getChildren()) {
+        ((AggExpr) copy).addChild(copy(child));
+      }
+    }
+    return copy;
+  }
 
-    Expr expr = null;
+  /** Parse a String to a Regex.Expr tree, see {@link #parseChecked(String)}
+   * @throws IllegalArgumentException if the string is not a valid regex */
+  public static Expr parse(String s) {
     try {
-      expr = RegexParser.transform(parseToTree(s));
-    } catch (Exception e) {
-      log.error("Cannot parse regex " + Tools.asJavaString(s));
-      e.printStackTrace();
-      System.exit(0);
+      return parseChecked(s);
+    } catch (RegexParseException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  /** Change the number of parsed regexes that are kept, 0 disables the cache */
+  public static void setCacheCapacity(int capacity) {
+    cache = createCache(capacity);
+  }
+
+  private static Map<String, Expr> createCache(int capacity) {
+    if (capacity <= 0) {
+      return null;
     }
+    return Collections.synchronizedMap(new LinkedHashMap<String, Expr>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
 
-    return expr;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Expr> eldest) {
+        return size() > capacity;
+      }
+    });
   }
 
   /**
@@ -132,7 +257,9 @@ public class RegexParser {
     AggExpr e = null;
     Expr result = null;
 
-    log.trace("transforming {} '{}'", ctx.getClass(), ctx.getText());
+    if (log.isTraceEnabled()) {
+      log.trace("transforming {} '{}'", ctx.getClass(), ctx.getText());
+    }
 
     if (ctx instanceof RegexGrammarParser.LetterContext || ctx instanceof RegexGrammarParser.DigitContext || ctx instanceof Shared_atomContext
         || ctx instanceof RegexGrammarParser.Shared_literalContext) {
@@ -194,8 +321,9 @@ public class RegexParser {
       result = transformChildren(e, ctx, false);
     } else {
     }
-    String r = result == null ? "null" : result.toRegexString();
-    log.trace("transformed {} '{}', result " + r, ctx.getClass(), ctx.getText());
+    if (log.isTraceEnabled()) {
+      log.trace("transformed {} '{}', result {}", ctx.getClass(), ctx.getText(), result == null ? "null" : result.toRegexString());
+    }
     return result;
   }
 
@@ -39,8 +39,8 @@ public class Repeat extends AggExpr {
 
     @Override
     public int hashCode() {
-      // use toRegexString to make hashing independent of addr of r
-      return 17 * (r == null ? 1 : Objects.hashCode(r.toRegexString(r))) + 31 * c;
+      // use structuralHash to make hashing independent of addr of r
+      return 17 * (r == null ? 1 : r.structuralHash()) + 31 * c;
     }
   }
 
@@ -88,6 +88,7 @@ public class Repeat extends AggExpr {
     } else {
       min = val;
     }
+    modified();
   }
 
   public void setMax(int val) {
@@ -96,6 +97,7 @@ public class Repeat extends AggExpr {
     } else {
       max = STAR;
     }
+    modified();
   }
 
   public void addToMin(int val) {
@@ -129,6 +131,17 @@ public class Repeat extends AggExpr {
     return this.toRegexString("", "", nodeText(), m);
   }
 
+  @Override
+  protected int computeStructuralHash() {
+    return 31 * (31 * super.computeStructuralHash() + min) + max;
+  }
+
+  @Override
+  protected boolean sameStructure(Expr other) {
+    Repeat o = (Repeat) other;
+    return min == o.min && max == o.max && super.sameStructure(other);
+  }
+
   @Override
   public String toJava() {
 
@@ -50,6 +50,16 @@ public class Text extends Expr {
     return ToStringModifier.apply(m, this, text);
   }
 
+  @Override
+  protected int computeStructuralHash() {
+    return 37 * text.hashCode() + 1;
+  }
+
+  @Override
+  protected boolean sameStructure(Expr other) {
+    return text.equals(((Text) other).text);
+  }
+
   @Override
   public int height() {
     return 0;
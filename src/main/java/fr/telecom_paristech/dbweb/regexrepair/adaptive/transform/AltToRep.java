@@ -1,7 +1,12 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
@@ -9,32 +14,54 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
 /** Convert (...||...) to (...|...)? */
 public class AltToRep extends CopyExpr {
 
+  /** Same as this transformation, for a node with simplified children (see {@link Rewriter}) */
+  public static final RewriteRule RULE = AltToRep::rule;
+
+  private static Expr rule(Expr expr, Function<Expr, String> regex) {
+    if (!(expr instanceof Alt)) {
+      return null;
+    }
+    // also convert (a|b?) to (a|b)?
+    List<Expr> children = ((Alt) expr).getChildren();
+    List<Expr> nonEmpty = children.stream().filter(c -> !regex.apply(c).isEmpty()).map(c -> isOptional(c) ? ((Repeat) c).getChild() : c)
+        .collect(Collectors.toList());
+    if (nonEmpty.size() == children.size() && children.stream().noneMatch(AltToRep::isOptional)) {
+      return null;
+    } else if (nonEmpty.isEmpty()) {
+      return new Conc();
+    }
+    return optional(nonEmpty);
+  }
+
+  /** The alternative of the expressions (or the only expression) as an optional expression */
+  private static Repeat optional(List<Expr> alternatives) {
+    return new Repeat(alternatives.size() == 1 ? alternatives.get(0) : new Alt(alternatives), 0, 1);
+  }
+  private static boolean isOptional(Expr e) {
+    return e instanceof Repeat && ((Repeat) e).getMin() == 0 && ((Repeat) e).getMax() == 1;
+  }
+
   @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
+  protected Expr rewrite(Expr expr, AggExpr parent) {
     if (expr instanceof Alt) {
-      // 
       AggExpr n = new Alt();
 
       boolean producesEmpty = false;
       for (Expr child : ((Alt) expr).getChildren()) {
-        if ("".equals(child.toRegexString())) {
+        if (child.toRegexString().isEmpty()) {
           producesEmpty = true;
           continue;
         }
         apply(child, n);
       }
       if (producesEmpty) {
-        if (n.getChildren().size() == 1) {
-          n = new Repeat(n.getChildren().get(0), 0, 1);
-        } else {
-          n = new Repeat(n, 0, 1);
-        }
+        n = optional(n.getChildren());
       }
 
       addTo(n, parent);
       return n;
     } else {
-      return super.apply(expr, parent);
+      return super.rewrite(expr, parent);
     }
   }
 
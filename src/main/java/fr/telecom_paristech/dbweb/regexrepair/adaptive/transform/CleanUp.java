@@ -1,8 +1,11 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
@@ -20,18 +23,89 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Text;
  * - remove {1} quantifiers
  */
 public class CleanUp extends CopyExpr {
-  @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
-    if (expr instanceof AggExpr ) {
-      AggExpr ae = (AggExpr)expr;
-      if (ae.getCollapseSingleChild() && ae.getChildren().size() == 1) {
-        return apply(ae.getChildren().get(0), parent);
+
+  /** Same as this transformation, for a node with cleaned up children (see {@link Rewriter}) */
+  public static final RewriteRule RULE = CleanUp::rule;
+
+  private static Expr rule(Expr expr, Function<Expr, String> regex) {
+    if (collapses(expr)) {
+      return ((AggExpr) expr).getChildren().get(0);
+    }
+
+    boolean changed = false;
+    List<Expr> children = new ArrayList<>();
+    if (expr instanceof Conc) {
+      // flatten concatenations, and remove empty expressions
+      for (Expr child : ((Conc) expr).getChildren()) {
+        if (regex.apply(child).isEmpty()) {
+          changed = true;
+        } else if (child instanceof Conc) {
+          children.addAll(((Conc) child).getChildren());
+          changed = true;
+        } else {
+          children.add(child);
+        }
+      }
+      return changed ? new Conc(children) : null;
+    } else if (expr instanceof Alt) {
+      // flatten alternatives, and remove duplicates
+      Set<String> seen = new HashSet<>();
+      for (Expr child : ((Alt) expr).getChildren()) {
+        changed |= child instanceof Alt;
+        for (Expr c : child instanceof Alt ? ((Alt) child).getChildren() : Collections.singletonList(child)) {
+          String str = regex.apply(c);
+          if (isDuplicate(str, seen)) {
+            changed = true;
+          } else {
+            children.add(c);
+            seen.add(str);
+          }
+        }
+      }
+      if (children.isEmpty() || children.size() == 1 && isEmptyRegex(regex.apply(children.get(0)))) {
+        return new Conc();
+      }
+      return changed ? new Alt(children) : null;
+    } else if (expr instanceof Repeat) {
+      Repeat r = (Repeat) expr;
+      if (r.getChildren().size() == 0) {
+        return new Conc();
+      } else if (isOnce(r)) {
+        return r.getChild();
       }
     }
+    return null;
+  }
+
+  /** Whether the node can be replaced by its only child */
+  private static boolean collapses(Expr expr) {
+    return expr instanceof AggExpr && ((AggExpr) expr).getCollapseSingleChild() && ((AggExpr) expr).getChildren().size() == 1;
+  }
+
+  /** Whether an alternative with the regexes 'seen' already contains regex */
+  private static boolean isDuplicate(String regex, Set<String> seen) {
+    return seen.contains(regex) || seen.contains("(" + regex + ")");
+  }
+
+  /** Whether a regex only matches the empty string */
+  private static boolean isEmptyRegex(String regex) {
+    return regex.isEmpty() || regex.equals("()");
+  }
+
+  /** Whether a quantifier is {1} */
+  private static boolean isOnce(Repeat r) {
+    return r.getMin() == 1 && r.getMax() == 1;
+  }
+
+  @Override
+  protected Expr rewrite(Expr expr, AggExpr parent) {
+    if (collapses(expr)) {
+      return apply(((AggExpr) expr).getChildren().get(0), parent);
+    }
 
     if (expr instanceof Conc && parent instanceof Conc) {
       for (Expr child : ((Conc) expr).getChildren()) {
-        if (child.toRegexString().length() == 0) {
+        if (child.toRegexString().isEmpty()) {
           continue;
         }
         apply(child, parent);
@@ -40,7 +114,7 @@ public class CleanUp extends CopyExpr {
     } else if (expr instanceof Alt) {
       Alt copy = (Alt) copy(expr);
       applyOnAlt((Alt) expr, copy, new HashSet<>());
-      if (Arrays.asList("()", "").contains(copy.toRegexString())) {
+      if (isEmptyRegex(copy.toRegexString())) {
         return parent == null ? new Conc() : parent;
       } else {
         return addTo(copy, parent);
@@ -52,7 +126,7 @@ public class CleanUp extends CopyExpr {
         apply(r.getChild(), rCopy);
         if (rCopy.getChildren().size() == 0) {
           return parent;
-        } else if (rCopy.getMin() == 1 && rCopy.getMax() == 1) {
+        } else if (isOnce(rCopy)) {
           return addTo(rCopy.getChild(), parent);
         }
         else {
@@ -62,7 +136,7 @@ public class CleanUp extends CopyExpr {
 
       return parent;
     }
-    return super.apply(expr, parent);
+    return super.rewrite(expr, parent);
   }
 
   protected void applyOnAlt(Alt expr, Alt copy, Set<String> children) {
@@ -72,7 +146,7 @@ public class CleanUp extends CopyExpr {
         applyOnAlt((Alt) child, copy, children);
       } else {
         String regex = child.toRegexString();
-        if (!children.contains(regex) && !children.contains("(" + regex + ")")) {
+        if (!isDuplicate(regex, children)) {
           copy.addChild(child);
           children.add(regex);
         }
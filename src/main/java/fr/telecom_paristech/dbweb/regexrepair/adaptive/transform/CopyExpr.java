@@ -1,9 +1,14 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 
 /** Base class for other transformations.
@@ -16,6 +21,44 @@ public class CopyExpr {
 
   Map<Expr, Expr> newToOld = new HashMap<>();
 
+  /** Result of a transformation of a subtree, reused as long as the subtree doesn't change (null if disabled) */
+  private Map<Expr, Memo> memo = null;
+
+  /** Results of transforming a subtree, for each kind of parent (none, concatenation, alternative) */
+  private static class Memo {
+
+    final long version;
+
+    final Result[] results = new Result[3];
+
+    Memo(long version) {
+      this.version = version;
+    }
+  }
+
+  /** Nodes that a transformation added to the parent, and its return value (null if it returned the parent) */
+  private static class Result {
+
+    final List<Expr> added;
+
+    final Expr returned;
+
+    Result(List<Expr> added, Expr returned) {
+      this.added = added;
+      this.returned = returned;
+    }
+  }
+
+  /**
+   * Remember the transformed subtrees, and reuse them in later calls while the subtree has the same {@link Expr#version()}.
+   * The results share nodes with each other, so they must not be modified, and the old/new maps are incomplete.
+   * Modifies this instance!
+   */
+  public CopyExpr incremental() {
+    memo = new WeakHashMap<>();
+    return this;
+  }
+
   public Expr apply(Expr expr) {
     return apply(expr, null);
   }
@@ -28,6 +71,40 @@ public class CopyExpr {
     return newToOld;
   }
 
+  /**
+   * Applies transformation to expr, see {@link #rewrite(Expr, AggExpr)}.
+   * In incremental mode, the result is reused if expr didn't change.
+   * The result of a transformation may depend on the kind of the parent, but not on its other properties (except for quantifiers).
+   */
+  protected Expr apply(Expr expr, AggExpr parent) {
+    int kind = parent == null ? 0 : parent instanceof Conc ? 1 : parent instanceof Alt ? 2 : -1;
+    if (memo == null || kind < 0) {
+      return rewrite(expr, parent);
+    }
+
+    long version = expr.version();
+    Memo m = memo.get(expr);
+    if (m == null || m.version != version) {
+      m = new Memo(version);
+      memo.put(expr, m);
+    }
+    Result r = m.results[kind];
+    if (r != null) {
+      if (parent != null) {
+        parent.addChildren(r.added);
+      }
+      return r.returned == null ? parent : r.returned;
+    }
+
+    int before = parent == null ? 0 : parent.getChildren().size();
+    Expr returned = rewrite(expr, parent);
+    List<Expr> added = parent == null ? new ArrayList<>() : new ArrayList<>(parent.getChildren().subList(before, parent.getChildren().size()));
+    if (expr.version() == version) {
+      m.results[kind] = new Result(added, parent != null && returned == parent ? null : returned);
+    }
+    return returned;
+  }
+
   /**
    * Applies transformation (default: copy) to expr.
    * 
@@ -37,7 +114,7 @@ public class CopyExpr {
    * 
    * @return parent == null ? expr : parent
    */
-  protected Expr apply(Expr expr, AggExpr parent) {
+  protected Expr rewrite(Expr expr, AggExpr parent) {
     Expr copy = copy(expr);
 
     if (copy instanceof AggExpr) {
@@ -9,7 +9,7 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
 public class EmbedInConc extends CopyExpr {
 
   @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
+  protected Expr rewrite(Expr expr, AggExpr parent) {
     if (!(expr instanceof Conc) && !(parent instanceof Conc)) {
       Conc c = new Conc();
       addTo(c, parent);
@@ -17,7 +17,7 @@ public class EmbedInConc extends CopyExpr {
       return c;
     }
 
-    return super.apply(expr, parent);
+    return super.rewrite(expr, parent);
   }
 
   public static void main(String[] args) {
@@ -2,6 +2,8 @@ package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
@@ -18,6 +20,70 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
  */
 public class FoldRepeat extends CopyExpr {
 
+  /** Same as this transformation, for a node with folded children (see {@link Rewriter}) */
+  public static final RewriteRule RULE = FoldRepeat::rule;
+
+  private static Expr rule(Expr expr, Function<Expr, String> regex) {
+    if (!(expr instanceof Conc)) {
+      return null;
+    }
+    List<Expr> children = ((Conc) expr).getChildren();
+    List<Expr> result = new ArrayList<>();
+    // strings of the result, to check whether something changed
+    List<String> strings = new ArrayList<>();
+    boolean combined = false;
+    for (int i = 0, j; i < children.size(); i = j) {
+      // combine the following children with the same subexpression
+      Expr c = children.get(i);
+      Expr base = c instanceof Repeat ? ((Repeat) c).getChild() : c;
+      String str = regex.apply(base);
+      int min = c instanceof Repeat ? ((Repeat) c).getMin() : 1;
+      int max = c instanceof Repeat ? ((Repeat) c).getMax() : 1;
+      for (j = i + 1; j < children.size(); j++) {
+        Expr o = children.get(j);
+        if (!regex.apply(o instanceof Repeat ? ((Repeat) o).getChild() : o).equals(str)) {
+          break;
+        }
+        min = add(min, o instanceof Repeat ? ((Repeat) o).getMin() : 1);
+        max = add(max, o instanceof Repeat ? ((Repeat) o).getMax() : 1);
+      }
+
+      if (asConc(base, str, min, max)) {
+        for (int k = 0; k < max; k++) {
+          result.add(k == 0 ? base : new CopyExpr().apply(base));
+          strings.add(str);
+        }
+      } else if (j == i + 1) {
+        result.add(c);
+        strings.add(regex.apply(c));
+      } else {
+        result.add(new Repeat(base, min, max));
+        combined = true;
+      }
+    }
+
+    if (!combined && strings.equals(children.stream().map(regex).collect(Collectors.toList()))) {
+      return null;
+    }
+    return new Conc(result);
+  }
+
+  /** Add repetition counts, without overflow */
+  private static int add(int a, int b) {
+    return (int) Math.min((long) a + b, Repeat.STAR);
+  }
+
+  /** Whether a simple concatenation leads to less characters than a quantifier (e.g. tt instead of t{2}) */
+  private static boolean asConc(Expr child, String str, int min, int max) {
+    return min == max && (long) str.length() * max <= repeatLength(child, str, min, max);
+  }
+
+  /** Length of the string of a quantifier, without creating it */
+  private static int repeatLength(Expr child, String str, int min, int max) {
+    boolean parentheses = child instanceof AggExpr && !(str.length() == 1 && str.charAt(0) != '|') && !(str.length() == 2 && str.charAt(0) == '\\');
+    return str.length() + (parentheses ? 2 : 0) + new Repeat(min, max).nodeText().length();
+  }
+
   private List<Repeat> embed(List<Expr> l) {
     List<Repeat> result = new ArrayList<>();
     for (Expr e : l) {
@@ -35,17 +101,24 @@ public class FoldRepeat extends CopyExpr {
     String regex = null;
     // store result
     Repeat rep = null;
+    boolean copied = false;
     List<Repeat> result = new ArrayList<>();
     for (int i = 0; i < l.size(); i++) {
       Repeat c = l.get(i);
       Expr child = c.getChildren().get(0);
       if (child.toRegexString().equals(regex)) {
-        rep.addToMin(c.getMin());
-        rep.addToMax(c.getMax());
+        if (!copied) {
+          // don't modify the transformed subtree, it might be reused in incremental mode
+          rep = new Repeat(rep.getChildren().get(0), rep.getMin(), rep.getMax());
+          copied = true;
+        }
+        rep.setMin(add(rep.getMin(), c.getMin()));
+        rep.setMax(add(rep.getMax(), c.getMax()));
       } else {
         result.add(rep);
         regex = child.toRegexString();
         rep = c;
+        copied = false;
       }
     }
     result.add(rep);
@@ -53,7 +126,7 @@ public class FoldRepeat extends CopyExpr {
   }
 
   @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
+  protected Expr rewrite(Expr expr, AggExpr parent) {
     if (expr instanceof Conc) {
       Conc n = new Conc();
       List<Repeat> l = embed(((Conc) expr).getChildren());
@@ -65,7 +138,7 @@ public class FoldRepeat extends CopyExpr {
 
       return addTo(n, parent);
     } else {
-      return super.apply(expr, parent);
+      return super.rewrite(expr, parent);
     }
   }
 
@@ -80,16 +153,8 @@ public class FoldRepeat extends CopyExpr {
       return;
     }
 
-    // check wether a simply concatenation leads to less characters (e.g. tt instead of t{2})
-    boolean asConc = false;
-    if (r.getMin() == r.getMax()) {
-      int lenRep = r.toRegexString().length();
-      int lenConc = r.getChildren().get(0).toRegexString().length() * r.getMax();
-      if (lenConc <= lenRep) {
-        asConc = true;
-      }
-    }
-    if (asConc) {
+    Expr child = r.getChildren().get(0);
+    if (asConc(child, child.toRegexString(), r.getMin(), r.getMax())) {
       for (int i = 0; i < r.getMax(); i++) {
         c.addChild(r.getChildren().get(0));
       }
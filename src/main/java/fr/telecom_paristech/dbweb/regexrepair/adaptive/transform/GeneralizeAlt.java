@@ -2,8 +2,10 @@ package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.function.Function;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
@@ -18,48 +20,71 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
  */
 public class GeneralizeAlt extends CopyExpr {
 
-  @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
-    if (expr instanceof Alt) {
+  /** Same as this transformation, for a node with generalized children (see {@link Rewriter}) */
+  public static final RewriteRule RULE = GeneralizeAlt::rule;
 
-      // sort children by their string representation
-      // (ignoring top level repetitions)
-      TreeMap<String, List<Expr>> strToExpr = new TreeMap<>();
-      List<String> order = new ArrayList<>();
+  private static Expr rule(Expr expr, Function<Expr, String> regex) {
+    if (!(expr instanceof Alt)) {
+      return null;
+    }
+    Map<String, List<Expr>> strToExpr = group(((Alt) expr).getChildren(), regex);
+    if (strToExpr.values().stream().noneMatch(cs -> cs.size() > 2)) {
+      return null;
+    }
 
-      for (Expr c : ((Alt) expr).getChildren()) {
-        Expr cc = c;
-        while (cc instanceof Repeat) {
-          cc = ((Repeat) cc).getChildren().get(0);
-        }
-        strToExpr.computeIfAbsent(cc.toRegexString(), k -> {
-          order.add(k);
-          return new ArrayList<>();
-        }).add(c);
+    Alt a = new Alt();
+    for (List<Expr> cs : strToExpr.values()) {
+      if (cs.size() > 2) {
+        a.addChild(generalize(cs));
+      } else {
+        a.addChildren(cs);
+      }
+    }
+    return a;
+  }
+
+  /** Group children by their string representation (ignoring top level repetitions), in the order of their first occurrence */
+  private static Map<String, List<Expr>> group(List<Expr> children, Function<Expr, String> regex) {
+    Map<String, List<Expr>> strToExpr = new LinkedHashMap<>();
+    for (Expr c : children) {
+      Expr cc = c;
+      while (cc instanceof Repeat) {
+        cc = ((Repeat) cc).getChild();
       }
+      strToExpr.computeIfAbsent(regex.apply(cc), k -> new ArrayList<>()).add(c);
+    }
+    return strToExpr;
+  }
 
+  /** One quantifier for repetitions of the same expression, from the smallest to the largest count */
+  private static Repeat generalize(List<Expr> cs) {
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    Expr unnested = null;
+    for (Expr e : cs) {
+      int localMin = 1;
+      int localMax = 1;
+      while (e instanceof Repeat) {
+        localMin = SimplifyRepeat.multiply(localMin, ((Repeat) e).getMin());
+        localMax = SimplifyRepeat.multiply(localMax, ((Repeat) e).getMax());
+        e = ((Repeat) e).getChild();
+      }
+      min = Math.min(min, localMin);
+      max = Math.max(max, localMax);
+      unnested = e;
+    }
+    return new Repeat(unnested, min, max);
+  }
+
+  @Override
+  protected Expr rewrite(Expr expr, AggExpr parent) {
+    if (expr instanceof Alt) {
+      Map<String, List<Expr>> strToExpr = group(((Alt) expr).getChildren(), Expr::toRegexString);
       Alt a = new Alt();
       addTo(a, parent);
-      for (String str : order) {
-        List<Expr> cs = strToExpr.get(str);
+      for (List<Expr> cs : strToExpr.values()) {
         if (cs.size() > 2) {
-          int min = Integer.MAX_VALUE;
-          int max = 0;
-          Expr unnested = null;
-          for (Expr e : cs) {
-            int localMin = 1;
-            int localMax = 1;
-            while (e instanceof Repeat) {
-              localMin *= ((Repeat) e).getMin();
-              localMax *= ((Repeat) e).getMax();
-              e = ((Repeat) e).getChildren().get(0);
-            }
-
-            min = Math.min(min, localMin);
-            max = Math.max(max, localMax);
-            unnested = e;
-          }
-          cs = Arrays.asList(new Repeat(unnested, min, max));
+          cs = Arrays.asList(generalize(cs));
         }
         for (Expr e : cs) {
           apply(e, a);
@@ -69,7 +94,7 @@ public class GeneralizeAlt extends CopyExpr {
       return a;
     }
     else {
-      return super.apply(expr, parent);
+      return super.rewrite(expr, parent);
     }
   }
 
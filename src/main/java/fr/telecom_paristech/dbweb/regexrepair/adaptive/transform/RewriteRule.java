@@ -0,0 +1,19 @@
+package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
+
+import java.util.function.Function;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+
+/** A local simplification of a regex node, applied by {@link Rewriter} */
+@FunctionalInterface
+public interface RewriteRule {
+
+  /**
+   * Rewrite a node whose children are already simplified.
+   * The result may reuse the children, but must not modify them.
+   * @param expr node to rewrite
+   * @param regex returns the regex string of a node (cached for simplified nodes)
+   * @return the replacement of expr, or null if the rule doesn't change it
+   */
+  Expr apply(Expr expr, Function<Expr, String> regex);
+}
@@ -0,0 +1,90 @@
+package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+
+/**
+ * Simplifies a regex with a list of rewrite rules, in one bottom-up traversal.
+ * The children of a node are simplified first, then the rules are applied to the node (in the order of the list) until none of them changes it.
+ * Nodes created by a rule are simplified in the same way.
+ *
+ * The rules of {@link #standard()} do the same as {@link CleanUp}, {@link SimplifyRepeat}, {@link FoldRepeat}, {@link GeneralizeAlt}
+ * and {@link AltToRep}, but they are repeated until a fixpoint, so the result might be simpler than applying the transformations one after another.
+ */
+public class Rewriter {
+
+  /** Maximum number of rewrites of one node, in case some rules undo each other */
+  public static final int MAX_REWRITES = 1000;
+
+  private final List<RewriteRule> rules = new ArrayList<>();
+
+  public Rewriter(RewriteRule... rules) {
+    this.rules.addAll(Arrays.asList(rules));
+  }
+
+  /** Rules of the postprocessing step of the repair algorithm */
+  public static Rewriter standard() {
+    return new Rewriter(CleanUp.RULE, SimplifyRepeat.RULE, FoldRepeat.RULE, GeneralizeAlt.RULE, AltToRep.RULE);
+  }
+
+  /** Add a rule after the other rules. Modifies this instance! */
+  public Rewriter add(RewriteRule rule) {
+    rules.add(rule);
+    return this;
+  }
+
+  /** Add a rule at the given position, so that it is tried before the rules after it. Modifies this instance! */
+  public Rewriter add(int index, RewriteRule rule) {
+    rules.add(index, rule);
+    return this;
+  }
+
+  public List<RewriteRule> getRules() {
+    return Collections.unmodifiableList(rules);
+  }
+
+  /** Simplify the expression, without modifying it */
+  public Expr apply(Expr expr) {
+    return new Run().simplify(expr);
+  }
+
+  /** State of one call of {@link Rewriter#apply(Expr)} */
+  private class Run {
+
+    /** Simplified nodes, they won't change anymore */
+    final Set<Expr> done = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Simplify a copy of expr */
+    Expr simplify(Expr expr) {
+      for (int i = 0; !done.contains(expr); i++) {
+        Expr copy = expr.clone();
+        if (expr instanceof AggExpr) {
+          List<Expr> children = new ArrayList<>(((AggExpr) expr).getChildren().size());
+          for (Expr child : ((AggExpr) expr).getChildren()) {
+            children.add(simplify(child));
+          }
+          ((AggExpr) copy).addChildren(children);
+        }
+        expr = copy;
+
+        Expr next = null;
+        for (int j = 0; j < rules.size() && next == null && i < MAX_REWRITES; j++) {
+          next = rules.get(j).apply(expr, Expr::toRegexString);
+        }
+        if (next == null) {
+          done.add(expr);
+        } else {
+          expr = next;
+        }
+      }
+      return expr;
+    }
+  }
+}
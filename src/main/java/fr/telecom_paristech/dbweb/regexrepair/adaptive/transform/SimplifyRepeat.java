@@ -1,5 +1,7 @@
 package fr.telecom_paristech.dbweb.regexrepair.adaptive.transform;
 
+import java.util.function.Function;
+
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
@@ -11,22 +13,41 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
  */
 public class SimplifyRepeat extends CopyExpr {
 
+  /** Same as this transformation, for a node with simplified children (see {@link Rewriter}) */
+  public static final RewriteRule RULE = SimplifyRepeat::rule;
+
+  private static Expr rule(Expr expr, Function<Expr, String> regex) {
+    if (expr instanceof Repeat && ((Repeat) expr).getChild() instanceof Repeat) {
+      Repeat pr = (Repeat) expr, cr = (Repeat) pr.getChild();
+      if (combinable(pr, cr)) {
+        return new Repeat(cr.getChild(), multiply(cr.getMin(), pr.getMin()), multiply(cr.getMax(), pr.getMax()));
+      }
+    }
+    return null;
+  }
+
+  /** Whether a quantifier of a quantifier can be replaced by one quantifier with the product of the counts */
+  private static boolean combinable(Repeat parent, Repeat child) {
+    return child.getMin() == child.getMax() && parent.getMin() == parent.getMax() || child.getMin() == 0;
+  }
+
+  /** Multiply repetition counts, without overflow */
+  static int multiply(int a, int b) {
+    return (int) Math.min((long) a * b, Repeat.STAR);
+  }
+
   @Override
-  protected Expr apply(Expr expr, AggExpr parent) {
+  protected Expr rewrite(Expr expr, AggExpr parent) {
     if (expr instanceof Repeat && parent instanceof Repeat) {
-      boolean combine = false;
       Repeat cr = (Repeat) expr, pr = (Repeat) parent;
-      combine |= cr.getMin() == cr.getMax() && pr.getMin() == pr.getMax();
-      combine |= cr.getMin() == 0;
-
-      if (combine) {
-        pr.setMin(cr.getMin() * pr.getMin());
-        pr.setMax(cr.getMax() * pr.getMax());
+      if (combinable(pr, cr)) {
+        pr.setMin(multiply(cr.getMin(), pr.getMin()));
+        pr.setMax(multiply(cr.getMax(), pr.getMax()));
         return apply(cr.getChild(), parent);
       }
     }
 
-    return super.apply(expr, parent);
+    return super.rewrite(expr, parent);
   }
 
   public static void main(String[] args) {
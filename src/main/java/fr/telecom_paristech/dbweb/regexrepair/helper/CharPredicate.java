@@ -0,0 +1,272 @@
+package fr.telecom_paristech.dbweb.regexrepair.helper;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+/**
+ * A regex that matches a single character (e.g. a, \., \d, [a-z] or .), compiled to a test on chars.
+ * ASCII characters are looked up in a bitmap, other characters in a sorted array of ranges.
+ *
+ * Regexes which are not understood by the parser of this class (e.g. \p{L}) are evaluated once with the regex engine for every ASCII character.
+ * For other characters the engine is called on every test.
+ */
+public class CharPredicate {
+
+  /** Regex engine, whose semantics the predicate reproduces */
+  public enum Flavor {
+    RE2J, JAVA
+  }
+
+  /** Number of chars */
+  private final static int CHARS = Character.MAX_VALUE + 1;
+
+  /** Meta characters outside of a character class */
+  private final static String META = "^$|()*+?{}[]\\.";
+
+  /** Bitmap for the characters 0-63 */
+  private final long low;
+
+  /** Bitmap for the characters 64-127 */
+  private final long high;
+
+  /** Sorted, disjoint ranges of characters &gt;= 128, as pairs of first and last character. Null if we need to ask the regex engine. */
+  private final char[] ranges;
+
+  /** Regex engine, for characters &gt;= 128 if ranges is null */
+  private final Predicate<String> engine;
+
+  /** The regex */
+  private final String regex;
+
+  private CharPredicate(String regex, long low, long high, char[] ranges, Predicate<String> engine) {
+    this.regex = regex;
+    this.low = low;
+    this.high = high;
+    this.ranges = ranges;
+    this.engine = engine;
+  }
+
+  /** Compile a regex for single characters */
+  public static CharPredicate compile(String regex, Flavor flavor) {
+    BitSet set = parse(regex, flavor);
+    if (set != null) {
+      return new CharPredicate(regex, bits(set, 0), bits(set, 64), ranges(set), null);
+    }
+
+    // let the regex engine decide
+    Predicate<String> engine;
+    if (flavor == Flavor.RE2J) {
+      com.google.re2j.Pattern p = com.google.re2j.Pattern.compile(regex);
+      engine = p::matches;
+    } else {
+      java.util.regex.Pattern p = java.util.regex.Pattern.compile(regex);
+      engine = s -> p.matcher(s).matches();
+    }
+    long low = 0, high = 0;
+    for (char c = 0; c < 64; c++) {
+      low |= engine.test(String.valueOf(c)) ? 1L << c : 0;
+      high |= engine.test(String.valueOf((char) (c + 64))) ? 1L << c : 0;
+    }
+    return new CharPredicate(regex, low, high, null, engine);
+  }
+
+  /** Whether the regex matches the character */
+  public boolean matches(char c) {
+    if (c < 64) {
+      return (low & 1L << c) != 0;
+    }
+    if (c < 128) {
+      return (high & 1L << (c - 64)) != 0;
+    }
+    if (ranges == null) {
+      return engine.test(String.valueOf(c));
+    }
+    // binary search for the last range starting at or before c
+    int lo = 0, hi = ranges.length / 2 - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ranges[2 * mid] <= c) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return hi >= 0 && c <= ranges[2 * hi + 1];
+  }
+
+  @Override
+  public String toString() {
+    return regex;
+  }
+
+  /** Bitmap of the 64 characters starting at 'from' */
+  private static long bits(BitSet set, int from) {
+    long result = 0;
+    for (int i = set.nextSetBit(from); i >= 0 && i < from + 64; i = set.nextSetBit(i + 1)) {
+      result |= 1L << (i - from);
+    }
+    return result;
+  }
+
+  /** Ranges of characters &gt;= 128 */
+  private static char[] ranges(BitSet set) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = set.nextSetBit(128); i >= 0; i = set.nextSetBit(i)) {
+      int end = set.nextClearBit(i);
+      sb.append((char) i).append((char) (end - 1));
+      i = end;
+    }
+    return sb.toString().toCharArray();
+  }
+
+  /** Parse a regex to the set of characters it matches, or null if it is not supported */
+  private static BitSet parse(String r, Flavor f) {
+    if (r.length() == 0) {
+      return null;
+    }
+    char c = r.charAt(0);
+    if (c == '[') {
+      return parseClass(r, f);
+    }
+    if (r.length() == 1 && c == '.') {
+      BitSet set = new BitSet(CHARS);
+      set.set(0, CHARS);
+      set.clear('\n');
+      if (f == Flavor.JAVA) {
+        set.clear('\r');
+        set.clear('\u0085');
+        set.clear(0x2028, 0x2029 + 1);
+      }
+      return set;
+    }
+    if (r.length() == 2 && c == '\\') {
+      return escape(r.charAt(1), f);
+    }
+    if (r.length() == 1 && META.indexOf(c) < 0) {
+      return single(c);
+    }
+    return null;
+  }
+
+  /** Parse a character class [...] */
+  private static BitSet parseClass(String r, Flavor f) {
+    if (r.contains("&&")) {
+      return null;
+    }
+    BitSet set = new BitSet(CHARS);
+    int i = 1;
+    boolean negate = i < r.length() && r.charAt(i) == '^';
+    if (negate) {
+      i++;
+    }
+    if (i >= r.length() || r.charAt(i) == ']') {
+      return null;
+    }
+
+    while (i < r.length() && r.charAt(i) != ']') {
+      // read one item: a character, an escape, or a range
+      BitSet item = item(r, i, f);
+      if (item == null) {
+        return null;
+      }
+      i += r.charAt(i) == '\\' ? 2 : 1;
+      boolean isChar = item.cardinality() == 1;
+      if (i + 1 < r.length() && r.charAt(i) == '-' && r.charAt(i + 1) != ']') {
+        // range
+        BitSet last = item(r, i + 1, f);
+        if (!isChar || last == null || last.cardinality() != 1) {
+          return null;
+        }
+        int from = item.nextSetBit(0), to = last.nextSetBit(0);
+        if (to < from) {
+          return null;
+        }
+        set.set(from, to + 1);
+        i += r.charAt(i + 1) == '\\' ? 3 : 2;
+        if (i + 1 < r.length() && r.charAt(i) == '-' && r.charAt(i + 1) != ']') {
+          return null;
+        }
+      } else {
+        set.or(item);
+      }
+    }
+
+    if (i != r.length() - 1) {
+      return null;
+    }
+    if (negate) {
+      set.flip(0, CHARS);
+    }
+    return set;
+  }
+
+  /** Parse a character or escape within a character class, starting at position i */
+  private static BitSet item(String r, int i, Flavor f) {
+    char c = r.charAt(i);
+    if (c == '\\') {
+      return i + 1 < r.length() ? escape(r.charAt(i + 1), f) : null;
+    }
+    if (c == '[') {
+      return null;
+    }
+    return single(c);
+  }
+
+  /** Parse escape sequence \c */
+  private static BitSet escape(char c, Flavor f) {
+    BitSet set = new BitSet(CHARS);
+    switch (Character.toLowerCase(c)) {
+    case 'd':
+      set.set('0', '9' + 1);
+      break;
+    case 'w':
+      set.set('0', '9' + 1);
+      set.set('A', 'Z' + 1);
+      set.set('a', 'z' + 1);
+      set.set('_');
+      break;
+    case 's':
+      set.set('\t', '\n' + 1);
+      set.set('\f', '\r' + 1);
+      set.set(' ');
+      if (f == Flavor.JAVA) {
+        set.set('\u000B');
+      }
+      break;
+    default:
+      return literal(c, f);
+    }
+    if (Character.isUpperCase(c)) {
+      set.flip(0, CHARS);
+    }
+    return set;
+  }
+
+  /** Parse escaped literal character \c, e.g. \t or \. */
+  private static BitSet literal(char c, Flavor f) {
+    switch (c) {
+    case 't':
+      return single('\t');
+    case 'n':
+      return single('\n');
+    case 'r':
+      return single('\r');
+    case 'f':
+      return single('\f');
+    case 'a':
+      return single('\u0007');
+    case 'v':
+      return f == Flavor.RE2J ? single('\u000B') : null;
+    default:
+      return c < 128 && !Character.isLetterOrDigit(c) ? single(c) : null;
+    }
+  }
+
+  /** Set with one character */
+  private static BitSet single(char c) {
+    BitSet set = new BitSet(CHARS);
+    set.set(c);
+    return set;
+  }
+
+}
@@ -1,15 +1,19 @@
 package fr.telecom_paristech.dbweb.regexrepair.helper;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,29 +43,108 @@ public class RegexTools {
     public List<String> missed = new ArrayList<>();
   }
 
+  /** Class for result of matchAll(...): the indices of the matching words, so the words don't need to be copied */
+  public static class MatchIndices {
+
+    /** Number of words */
+    public final int size;
+
+    /** Indices of the words that match */
+    public final BitSet matched;
+
+    public MatchIndices(int size, BitSet matched) {
+      this.size = size;
+      this.matched = matched;
+    }
+
+    public int matchedCount() {
+      return matched.cardinality();
+    }
+
+    public int missedCount() {
+      return size - matchedCount();
+    }
+
+    /** Indices of the words that don't match */
+    public IntStream missedIndices() {
+      return IntStream.range(0, size).filter(i -> !matched.get(i));
+    }
+
+    /** Select the words that don't match */
+    public <T> List<T> missed(List<T> words) {
+      return missedIndices().mapToObj(words::get).collect(Collectors.toList());
+    }
+  }
+
+  /** Number of words per task when matching in parallel, a multiple of 64 so that tasks don't share a long of the bit set */
+  private final static int MATCH_CHUNK = 64 * 64;
+
   /** Apply regex to list, obtaining matched/non-matched strings */
   public static MatchCount countMatches(String r, List<String> list) {
-    MatchCount result = new MatchCount();
-    com.google.re2j.Pattern pattern = com.google.re2j.Pattern.compile(r);
+    return countMatches(com.google.re2j.Pattern.compile(r), list, null);
+  }
+
+  /** Apply compiled regex to list, obtaining matched/non-matched strings. Matches in parallel if a pool is given */
+  public static MatchCount countMatches(com.google.re2j.Pattern pattern, List<String> list, ForkJoinPool pool) {
     long diff = -Tools.nanos();
-    for (String t : list) {
-      if (pattern.matcher(t).matches()) {
-        result.matched.add(t);
-      } else {
-        result.missed.add(t);
-      }
+    MatchIndices indices = matchAll(pattern, list, pool);
+    MatchCount result = new MatchCount();
+    for (int i = 0; i < list.size(); i++) {
+      (indices.matched.get(i) ? result.matched : result.missed).add(list.get(i));
     }
     diff += Tools.nanos();
     if (diff > 10 * (1e6 /*ms*/)) {
-      LOG.debug("counting matches for {}, with list {}", Tools.asJavaString(r), Tools.asJavaString(list));
-    } else {
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("counting matches for {}, with list {}", Tools.asJavaString(r), Tools.asJavaString(list));
-      }
+      LOG.debug("counting matches for {}, with {} words, {} missed, took {}s", Tools.asJavaString(pattern.pattern()), list.size(),
+          result.missed.size(), Tools.formatNanoseconds(diff));
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("counting matches for {}, with list {}", Tools.asJavaString(pattern.pattern()), Tools.asJavaString(list));
     }
     return result;
   }
 
+  /** Check which words match the pattern, reusing one matcher */
+  public static MatchIndices matchAll(com.google.re2j.Pattern pattern, Iterable<? extends CharSequence> words) {
+    BitSet matched = new BitSet();
+    com.google.re2j.Matcher m = pattern.matcher("");
+    int i = 0;
+    for (CharSequence word : words) {
+      if (m.reset(word).matches()) {
+        matched.set(i);
+      }
+      i++;
+    }
+    return new MatchIndices(i, matched);
+  }
+
+  /** Check which words match the pattern, e.g. for the lines of a file. Reads the stream only once. */
+  public static <T extends CharSequence> MatchIndices matchAll(com.google.re2j.Pattern pattern, Stream<T> words) {
+    Iterable<T> iterable = words::iterator;
+    return matchAll(pattern, iterable);
+  }
+
+  /**
+   * Check which words match the pattern, in chunks which are matched in parallel by the pool (sequentially if it is null).
+   * Each chunk reuses one matcher.
+   */
+  public static MatchIndices matchAll(com.google.re2j.Pattern pattern, List<? extends CharSequence> words, ForkJoinPool pool) {
+    if (pool == null || words.size() <= MATCH_CHUNK || !(words instanceof RandomAccess)) {
+      return matchAll(pattern, words);
+    }
+    long[] bits = new long[(words.size() + 63) / 64];
+    int chunks = (words.size() + MATCH_CHUNK - 1) / MATCH_CHUNK;
+    pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+      com.google.re2j.Matcher m = pattern.matcher("");
+      int end = Math.min(words.size(), (c + 1) * MATCH_CHUNK);
+      for (int i = c * MATCH_CHUNK; i < end; i++) {
+        if (m.reset(words.get(i)).matches()) {
+          bits[i >>> 6] |= 1L << i;
+        }
+      }
+    })).join();
+    return new MatchIndices(words.size(), BitSet.valueOf(bits));
+  }
+
   /** Transform a word to a regex by replacing a,..., z by [a-z], similar for other characters, and grouping them with quantifiers.
    * Example: abc12 becomes [a-z]{3}\d{2}
    */
@@ -84,7 +167,7 @@ public class RegexTools {
         //r.addChild(new Text("" + c));
         act = new Text("\\W", false);
       }
-      if (Objects.equals(last.toRegexString(), act.toRegexString())) {
+      if (last.structuralEquals(act)) {
         count++;
       } else {
         if (count > 0) {
@@ -0,0 +1,54 @@
+package fr.telecom_paristech.dbweb.regexrepair.iface;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Feedback which evaluates regexes in the background. The algorithm can continue with other candidates while waiting for the answer.
+ * Evaluations that are not needed anymore get cancelled.
+ */
+public interface AsyncFeedback extends Feedback {
+
+  /** Whether the regex has an acceptable quality, answered later */
+  CompletableFuture<Boolean> allowAsync(String regex);
+
+  @Override
+  default boolean allow(String regex) {
+    return allowAsync(regex).join();
+  }
+
+  /** Evaluates the regexes concurrently */
+  @Override
+  default List<Boolean> allowAll(List<String> regexes) {
+    List<CompletableFuture<Boolean>> futures = regexes.stream().map(this::allowAsync).collect(Collectors.toList());
+    return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  /** Evaluate a feedback with an executor. The feedback needs to be thread safe, e.g. a {@link CachingFeedback}. */
+  public static AsyncFeedback of(Feedback feedback, Executor executor) {
+    return new AsyncFeedback() {
+
+      @Override
+      public CompletableFuture<Boolean> allowAsync(String regex) {
+        return CompletableFuture.supplyAsync(() -> feedback.allow(regex), executor);
+      }
+
+      @Override
+      public long virtualTimeInNanoseconds() {
+        return feedback.virtualTimeInNanoseconds();
+      }
+
+      @Override
+      public long realTimeInNanoseconds() {
+        return feedback.realTimeInNanoseconds();
+      }
+
+      @Override
+      public long count() {
+        return feedback.count();
+      }
+    };
+  }
+}
@@ -0,0 +1,217 @@
+package fr.telecom_paristech.dbweb.regexrepair.iface;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
+
+/**
+ * Remembers the answers of a feedback, for the most recently used regexes (LRU).
+ * By default the regex itself is the key of the cache. A normalizer may map equivalent regexes to the same key,
+ * but it must preserve their meaning: e.g. whitespace around a regex is part of it, so trimming would mix up the answers of different regexes.
+ * The cache can be saved to a file and loaded again, to share it between repair runs.
+ *
+ * {@link #count()} counts all calls, {@link #realTimeInNanoseconds()} the time spent in {@link #allow(String)},
+ * and {@link #virtualTimeInNanoseconds()} the time it would have taken without the cache.
+ * Methods are synchronized, but the wrapped feedback is called without holding the lock.
+ */
+public class CachingFeedback implements Feedback {
+
+  /** Answer of the feedback for a regex, and how long it took */
+  public static class Answer {
+
+    public boolean allow;
+
+    public long nanos;
+
+    public Answer() {
+    }
+
+    public Answer(boolean allow, long nanos) {
+      this.allow = allow;
+      this.nanos = nanos;
+    }
+  }
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /** Wrapped feedback */
+  private final Feedback feedback;
+
+  /** Maximum number of cached regexes */
+  private final int capacity;
+
+  /** Transforms a regex to the key of the cache */
+  private final Function<String, String> normalizer;
+
+  /** Normalized regex to answer, least recently used first */
+  private final LinkedHashMap<String, Answer> cache;
+
+  private long hits = 0, misses = 0, evictions = 0;
+
+  private long virtualTime = 0, realTime = 0;
+
+  public CachingFeedback(Feedback feedback, int capacity) {
+    this(feedback, capacity, Function.identity());
+  }
+
+  /** Cache with a normalizer, which transforms a regex to an equivalent one, used as key of the cache */
+  public CachingFeedback(Feedback feedback, int capacity, Function<String, String> normalizer) {
+    this.feedback = feedback;
+    this.capacity = capacity;
+    this.normalizer = normalizer;
+    this.cache = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+        if (size() > CachingFeedback.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public boolean allow(String regex) {
+    long start = Tools.nanos();
+    String key = normalizer.apply(regex);
+    Answer answer;
+    synchronized (this) {
+      answer = cache.get(key);
+      if (answer != null) {
+        hits++;
+        virtualTime += answer.nanos;
+        realTime += Tools.nanos() - start;
+        return answer.allow;
+      }
+    }
+
+    // ask the wrapped feedback
+    long askStart = Tools.nanos();
+    boolean allow = feedback.allow(regex);
+    long nanos = Tools.nanos() - askStart;
+    synchronized (this) {
+      misses++;
+      cache.put(key, new Answer(allow, nanos));
+      virtualTime += nanos;
+      realTime += Tools.nanos() - start;
+    }
+    return allow;
+  }
+
+  /** Looks up all regexes, and asks the wrapped feedback for the missing ones in one batch */
+  @Override
+  public List<Boolean> allowAll(List<String> regexes) {
+    long start = Tools.nanos();
+    List<String> keys = new ArrayList<>(regexes.size());
+    Map<String, Boolean> answers = new HashMap<>();
+    Map<String, String> toAsk = new LinkedHashMap<>();
+    synchronized (this) {
+      for (String regex : regexes) {
+        String key = normalizer.apply(regex);
+        keys.add(key);
+        Answer answer = cache.get(key);
+        if (answer != null) {
+          hits++;
+          virtualTime += answer.nanos;
+          answers.put(key, answer.allow);
+        } else if (toAsk.putIfAbsent(key, regex) != null) {
+          hits++;
+        }
+      }
+    }
+
+    // ask the wrapped feedback, distributing the time equally
+    if (!toAsk.isEmpty()) {
+      long askStart = Tools.nanos();
+      List<Boolean> allowed = feedback.allowAll(new ArrayList<>(toAsk.values()));
+      long nanos = (Tools.nanos() - askStart) / toAsk.size();
+      synchronized (this) {
+        int i = 0;
+        for (String key : toAsk.keySet()) {
+          boolean allow = allowed.get(i++);
+          misses++;
+          cache.put(key, new Answer(allow, nanos));
+          virtualTime += nanos;
+          answers.put(key, allow);
+        }
+      }
+    }
+
+    synchronized (this) {
+      realTime += Tools.nanos() - start;
+    }
+    return keys.stream().map(answers::get).collect(Collectors.toList());
+  }
+
+  /** Add the answers of a file written by {@link #save(Path)}, if it exists */
+  public synchronized CachingFeedback load(Path file) throws IOException {
+    if (Files.exists(file)) {
+      Map<String, Answer> answers = mapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, Answer>>() {
+      });
+      cache.putAll(answers);
+    }
+    return this;
+  }
+
+  /** Write the cached answers to a file */
+  public synchronized void save(Path file) throws IOException {
+    mapper.writeValue(file.toFile(), cache);
+  }
+
+  @Override
+  public synchronized long virtualTimeInNanoseconds() {
+    return virtualTime;
+  }
+
+  @Override
+  public synchronized long realTimeInNanoseconds() {
+    return realTime;
+  }
+
+  @Override
+  public synchronized long count() {
+    return hits + misses;
+  }
+
+  /** Number of calls answered by the cache */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /** Number of calls answered by the wrapped feedback */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** Number of regexes removed from the cache, because it was full */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /** Number of cached regexes */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "hits " + hits + ", misses " + misses + ", evictions " + evictions + ", real " + Tools.formatNanoseconds(realTime) + "s, virtual "
+        + Tools.formatNanoseconds(virtualTime) + "s";
+  }
+}
@@ -0,0 +1,340 @@
+package fr.telecom_paristech.dbweb.regexrepair.iface;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+
+import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
+
+/**
+ * Feedback which checks regexes against line files: a regex is allowed if it matches at most a fraction of the negative lines,
+ * and (optionally) at least a fraction of the positive lines. A regex matches a line if it matches the whole line.
+ *
+ * The files are memory-mapped, and each line is decoded into a reused char buffer, without creating a string per line.
+ * The charset is UTF-8 by default. It must encode ASCII as ASCII (not UTF-16, for example), because the lines are split at the byte '\n'.
+ * Files that cannot be decoded are rejected by the constructor. The scan stops as soon as the result is known. The methods are thread safe.
+ *
+ * With {@link #sampling(double, long)} the lines are scanned in random order, and the scan stops early if a confidence bound shows that
+ * the fraction of the (non-)matching lines is clearly above or below the limit. Only candidates close to the limit need a full scan.
+ */
+public class CorpusFeedback implements Feedback {
+
+  /** A list of lines in a mapped file */
+  private static class Lines {
+
+    private final ByteBuffer buffer;
+
+    private final Charset charset;
+
+    /** Maximum number of chars of a decoded line */
+    private final int maxChars;
+
+    /** Start of each line */
+    private final int[] starts;
+
+    /** End of each line (without line break) */
+    private final int[] ends;
+
+    Lines(ByteBuffer buffer, Charset charset) throws CharacterCodingException {
+      this.buffer = buffer;
+      this.charset = charset;
+      int limit = buffer.limit();
+      int[] starts = new int[16], ends = new int[16];
+      int count = 0, start = 0, maxBytes = 0;
+      while (start < limit) {
+        int end = start;
+        while (end < limit && buffer.get(end) != '\n') {
+          end++;
+        }
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, 2 * count);
+          ends = Arrays.copyOf(ends, 2 * count);
+        }
+        starts[count] = start;
+        ends[count] = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+        maxBytes = Math.max(maxBytes, ends[count] - start);
+        count++;
+        start = end + 1;
+      }
+      this.starts = Arrays.copyOf(starts, count);
+      this.ends = Arrays.copyOf(ends, count);
+      this.maxChars = (int) Math.ceil(maxBytes * (double) charset.newDecoder().maxCharsPerByte());
+      // check that all lines can be decoded, so that the scans don't need to
+      Reader reader = new Reader();
+      for (int i = 0; i < count; i++) {
+        reader.decode(i);
+      }
+    }
+
+    int size() {
+      return starts.length;
+    }
+
+    /** Decodes the lines into a reused buffer; one reader per thread */
+    class Reader {
+
+      private final ByteBuffer in = buffer.duplicate();
+
+      private final CharBuffer out = CharBuffer.allocate(maxChars);
+
+      private final CharsetDecoder decoder = charset.newDecoder();
+
+      /** Line i, valid until the next call */
+      CharSequence get(int i) {
+        try {
+          return decode(i);
+        } catch (CharacterCodingException e) {
+          // checked by the constructor of Lines
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      private CharBuffer decode(int i) throws CharacterCodingException {
+        // cast for Java 8, where ByteBuffer doesn't override limit and position
+        ((Buffer) in).limit(ends[i]);
+        ((Buffer) in).position(starts[i]);
+        out.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+          result = decoder.flush(out);
+        }
+        if (!result.isUnderflow()) {
+          result.throwException();
+        }
+        out.flip();
+        return out;
+      }
+    }
+
+    /** Line indices in random order */
+    int[] shuffled(Random random) {
+      int[] order = new int[size()];
+      for (int i = 0; i < order.length; i++) {
+        int j = random.nextInt(i + 1);
+        order[i] = order[j];
+        order[j] = i;
+      }
+      return order;
+    }
+  }
+
+  private final Lines positive, negative;
+
+  /** Maximum fraction of negative lines that an allowed regex may match */
+  private double maxNegativeRatio = 0;
+
+  /** Minimum fraction of positive lines that an allowed regex must match */
+  private double minPositiveRatio = 0;
+
+  /** Probability that sampling decides wrongly; 0 for exact scans */
+  private double errorProbability = 0;
+
+  /** Order in which the lines are scanned; null for the file order */
+  private int[] positiveOrder, negativeOrder;
+
+  /** Number of lines scanned before checking the confidence bound for the first time; doubled after each check */
+  private static final int FIRST_SAMPLE = 64;
+
+  private long count = 0, realTime = 0, scanned = 0, sampled = 0;
+
+  /** Statistics of the last call of {@link #allow(String)} of each thread, as in {@link #exceeds} */
+  private final ThreadLocal<long[]> last = new ThreadLocal<>();
+
+  /** Feedback for a UTF-8 file with negative lines */
+  public CorpusFeedback(Path negative) throws IOException {
+    this(null, negative);
+  }
+
+  /** Feedback for UTF-8 files with positive and negative lines. Each can be null. */
+  public CorpusFeedback(Path positive, Path negative) throws IOException {
+    this(positive, negative, StandardCharsets.UTF_8);
+  }
+
+  /** Feedback for files with positive and negative lines in the given charset, which must be ASCII compatible. Each can be null. */
+  public CorpusFeedback(Path positive, Path negative, Charset charset) throws IOException {
+    if (!asciiCompatible(charset)) {
+      throw new IllegalArgumentException("charset " + charset + " doesn't encode ASCII as ASCII, so lines cannot be split at '\\n'");
+    }
+    this.positive = positive == null ? null : lines(positive, charset);
+    this.negative = negative == null ? null : lines(negative, charset);
+  }
+
+  /** Whether a charset encodes every ASCII char as the same single byte */
+  private static boolean asciiCompatible(Charset charset) {
+    byte[] ascii = new byte[128];
+    for (int i = 0; i < ascii.length; i++) {
+      ascii[i] = (byte) i;
+    }
+    return charset.canEncode() && Arrays.equals(ascii, new String(ascii, StandardCharsets.US_ASCII).getBytes(charset));
+  }
+
+  private static Lines lines(Path file, Charset charset) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("file too large for mapping: " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      return new Lines(buffer, charset);
+    } catch (CharacterCodingException e) {
+      throw new IOException("cannot decode " + file + " as " + charset, e);
+    }
+  }
+
+  /** Set the maximum fraction of negative lines that an allowed regex may match. Modifies this instance! */
+  public CorpusFeedback maxNegativeRatio(double maxNegativeRatio) {
+    this.maxNegativeRatio = maxNegativeRatio;
+    return this;
+  }
+
+  /** Set the minimum fraction of positive lines that an allowed regex must match. Modifies this instance! */
+  public CorpusFeedback minPositiveRatio(double minPositiveRatio) {
+    this.minPositiveRatio = minPositiveRatio;
+    return this;
+  }
+
+  /**
+   * Scan the lines in a random order, and stop as soon as the result is known with probability 1 - errorProbability.
+   * An errorProbability of 0 disables sampling. Modifies this instance!
+   */
+  public CorpusFeedback sampling(double errorProbability, long seed) {
+    this.errorProbability = errorProbability;
+    Random random = new Random(seed);
+    positiveOrder = errorProbability <= 0 || positive == null ? null : positive.shuffled(random);
+    negativeOrder = errorProbability <= 0 || negative == null ? null : negative.shuffled(random);
+    return this;
+  }
+
+  /** Number of negative lines */
+  public int negativeCount() {
+    return negative == null ? 0 : negative.size();
+  }
+
+  /** Number of positive lines */
+  public int positiveCount() {
+    return positive == null ? 0 : positive.size();
+  }
+
+  @Override
+  public boolean allow(String regex) {
+    long start = Tools.nanos();
+    // number of scanned lines, and whether the sampling decided
+    long[] stats = new long[2];
+    boolean result;
+    try {
+      Pattern pattern = Pattern.compile(regex);
+      result = !exceeds(pattern, negative, negativeOrder, maxNegativeRatio, true, stats)
+          && !exceeds(pattern, positive, positiveOrder, 1 - minPositiveRatio, false, stats);
+    } catch (PatternSyntaxException e) {
+      result = false;
+    }
+    synchronized (this) {
+      count++;
+      realTime += Tools.nanos() - start;
+      scanned += stats[0];
+      sampled += stats[1];
+    }
+    last.set(stats);
+    return result;
+  }
+
+  /**
+   * Whether more than a fraction of the lines match (or don't match) the pattern. Stops as soon as the limit is crossed or cannot be
+   * crossed anymore, or, if an order is given, as soon as the confidence bound decides.
+   */
+  private boolean exceeds(Pattern pattern, Lines lines, int[] order, double ratio, boolean matching, long[] stats) {
+    if (lines == null) {
+      return false;
+    }
+    long limit = (long) Math.floor(ratio * lines.size() + 1e-9);
+    int remaining = lines.size();
+    long found = 0;
+    int nextCheck = FIRST_SAMPLE;
+    double delta = errorProbability;
+    Matcher m = pattern.matcher("");
+    Lines.Reader reader = lines.new Reader();
+    for (int i = 0; i < lines.size(); i++, remaining--) {
+      if (found + remaining <= limit) {
+        return false;
+      }
+      if (order != null && i == nextCheck) {
+        // Hoeffding bound, with error probabilities delta/2, delta/4, ... for the successive checks
+        delta /= 2;
+        double eps = Math.sqrt(Math.log(2 / delta) / (2 * i));
+        double observed = (double) found / i;
+        if (observed - eps > ratio || observed + eps < ratio) {
+          stats[1]++;
+          return observed > ratio;
+        }
+        nextCheck *= 2;
+      }
+      stats[0]++;
+      if (m.reset(reader.get(order == null ? i : order[i])).matches() == matching && ++found > limit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized long virtualTimeInNanoseconds() {
+    return realTime;
+  }
+
+  @Override
+  public synchronized long realTimeInNanoseconds() {
+    return realTime;
+  }
+
+  @Override
+  public synchronized long count() {
+    return count;
+  }
+
+  /** Number of lines scanned by all calls; divide by {@link #count()} for the average per call */
+  public synchronized long scanned() {
+    return scanned;
+  }
+
+  /** Number of decisions taken by the confidence bound, before scanning all lines */
+  public synchronized long sampled() {
+    return sampled;
+  }
+
+  /** Number of lines scanned by the last call of {@link #allow(String)} in the current thread */
+  public long lastScanned() {
+    long[] stats = last.get();
+    return stats == null ? 0 : stats[0];
+  }
+
+  /** Number of decisions taken by the confidence bound in the last call of {@link #allow(String)} in the current thread (at most 2) */
+  public long lastSampled() {
+    long[] stats = last.get();
+    return stats == null ? 0 : stats[1];
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "calls " + count + ", scanned lines " + scanned + ", sampled decisions " + sampled + ", real " + Tools.formatNanoseconds(realTime)
+        + "s";
+  }
+}
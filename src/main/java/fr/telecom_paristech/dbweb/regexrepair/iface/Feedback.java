@@ -1,11 +1,24 @@
 package fr.telecom_paristech.dbweb.regexrepair.iface;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Feedback gives the algorithm the possibility to check the qualitity of intermediate or final regexes */
 public interface Feedback {
 
   /** Whether the regex has an acceptable quality */
   boolean allow(String regex);
 
+  /** Whether the regexes have an acceptable quality, in the same order as the regexes.
+   * Override this method if the feedback can check several regexes at once, e.g. with one pass over a corpus */
+  default List<Boolean> allowAll(List<String> regexes) {
+    List<Boolean> result = new ArrayList<>(regexes.size());
+    for (String regex : regexes) {
+      result.add(allow(regex));
+    }
+    return result;
+  }
+
   /** how much time feedback would take on the first call (i.e. without caches) */
   default long virtualTimeInNanoseconds() {
     return 0;
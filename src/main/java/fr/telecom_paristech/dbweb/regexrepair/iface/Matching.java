@@ -13,4 +13,7 @@ public class Matching {
   /** Original string */
   public String str;
 
+  /** Whether the best matching costs more than the bound of a bounded match (see {@link fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher#match(String, int)}) */
+  public boolean boundExceeded = false;
+
 }
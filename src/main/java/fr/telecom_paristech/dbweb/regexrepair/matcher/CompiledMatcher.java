@@ -0,0 +1,27 @@
+package fr.telecom_paristech.dbweb.regexrepair.matcher;
+
+import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
+
+/**
+ * A matcher prepared for one regex. It pays the preparation (e.g. building an automaton) once, and can match any number of strings.
+ *
+ * Implementations are immutable after compilation and can be shared between threads.
+ * The tables of a match are confined to the calling thread.
+ */
+public interface CompiledMatcher {
+
+  /** Calculate an approximate match of a string to the regex */
+  public Matching match(String s);
+
+  /**
+   * Calculate an approximate match of a string to the regex, which may skip partial matchings that cost more than maxCost.
+   * The cost is 2 per character of the string, minus the score of the matching (see {@link fr.telecom_paristech.dbweb.regexrepair.matcher.myers.MyersMatcher}).
+   * It is 0 for a perfect match. An unmatched character costs at least 3, an unmatched leaf at least 1.
+   * The result is the same as {@link #match(String)}. If it costs more than maxCost, {@link Matching#boundExceeded} is set.
+   * Matchers that cannot calculate the cost never set it.
+   */
+  public default Matching match(String s, int maxCost) {
+    return match(s);
+  }
+
+}
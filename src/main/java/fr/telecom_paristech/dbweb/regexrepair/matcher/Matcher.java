@@ -5,12 +5,24 @@ import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
 
 /**
  * A Matcher tries to map as many characters of a word to leaves of a regex as possible, so that the "order" of the leaves is respected.
+ *
+ * Implementations are thread-safe: one instance can match (and compile) concurrently, as long as the regexes are not modified meanwhile.
  */
 public interface Matcher {
 
   /** Calculate an approximate match of a string to a regex */
   public Matching match(Expr e, String s);
 
+  /** Calculate an approximate match of a string to a regex, see {@link CompiledMatcher#match(String, int)} */
+  public default Matching match(Expr e, String s, int maxCost) {
+    return compile(e).match(s, maxCost);
+  }
+
+  /** Prepare matching strings to a regex. Useful if many strings are matched to the same regex. */
+  public default CompiledMatcher compile(Expr e) {
+    return s -> match(e, s);
+  }
+
   /** Name of the matcher algorithm */
   public String info();
 
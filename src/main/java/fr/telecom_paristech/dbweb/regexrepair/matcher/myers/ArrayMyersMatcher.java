@@ -0,0 +1,832 @@
+package fr.telecom_paristech.dbweb.regexrepair.matcher.myers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.Matcher;
+
+/**
+ * Implements the same approximative regex matching algorithm as {@link MyersMatcher}, see [1].
+ * Instead of one object per cell, the tables C, D and I are stored in flat primitive arrays.
+ * It produces the same matching as {@link MyersMatcher}.
+ *
+ * Every cell of a table has a backpointer, that references either a cell of a table (kind C, D, I),
+ * or a "match" (kind M). A match of row i and state j represents the character i-1 matched by the leaf of state j.
+ * Its own backpointer is stored in the table M.
+ * A backpointer references a cell of the same row or of the previous row, so it stores only the kind, the state and the row offset.
+ *
+ * An instance returned by {@link #compile(Expr)} holds the automaton of one regex as index arrays, and can match many strings.
+ * It is immutable, so it can be used by several threads at the same time.
+ * The tables are reused by all matches of a thread (see {@link Tables}); each thread keeps at most 2^16 cells (1.8 MB).
+ * For bigger tables, only O(log M) rows are stored, and the backpointers are followed by recomputing rows (see {@link #linearSpace(int)}).
+ *
+ * [1] E. W. Myers and W. Miller, “Approximate matching of regular expressions,” Bulletin of mathematical biology, vol. 51, no. 1, pp. 5–37, 1989.
+ */
+public class ArrayMyersMatcher implements Matcher, CompiledMatcher {
+
+  /* Constants of the algorithm, see [1] and MyersMatcher */
+  private static final float g = 1;
+
+  private static final float weight_insert = -1;
+
+  private static final float weight_delete = -1;
+
+  private static final float weight_subst = Float.NEGATIVE_INFINITY;
+
+  private static final float weight_match = 2;
+
+  private static final float weight_match_special_chars = 2f;
+
+  /** Highest weight of a match, for the cost of a cell */
+  private static final float weight_match_max = Math.max(weight_match, weight_match_special_chars);
+
+  private static final java.util.regex.Pattern specialChars = java.util.regex.Pattern.compile("\\p{Punct}");
+
+  private static final float NEG_INF = Float.NEGATIVE_INFINITY;
+
+  /** Kinds of backpointers */
+  private static final int C = 0, D = 1, I = 2, M = 3;
+
+  /** Backpointer to nothing (end of the way back) */
+  private static final int NONE = -1;
+
+  /** Number of states */
+  private final int n;
+
+  /** Index of the start state \theta */
+  private final int start;
+
+  /** Index of the final state */
+  private final int end;
+
+  /** Whether a state is an ε-state */
+  private final boolean[] empty;
+
+  /** Regex leaf of a state, null for ε-states */
+  private final Expr[] leaf;
+
+  /** Compiled leaf of a state, null for ε-states */
+  private final CharPredicate[] predicate;
+
+  /** V - {t : \lambda(t) = \epsilon and t != \theta } in topological order */
+  private final int[] V_D;
+
+  /** Predecessors of a state */
+  private final int[][] prev;
+
+  /** Predecessors of a state, only DAG edges */
+  private final int[][] prevDAG;
+
+  /** Predecessors of a state, without \theta */
+  private final int[][] prevNoStart;
+
+  /** DAG predecessors of a state, only for ε-states (l.5 of [1]) */
+  private final int[][] prevDAGIfEmpty;
+
+  /** Predecessors of a state, only for non ε-states (l.8 of [1]) */
+  private final int[][] prevIfNonEmpty;
+
+  /** Bitset of V_D */
+  private final long[] isVD;
+
+  /** Successors of a state, which are in V_D (inverse of prev) */
+  private final int[][] nextC;
+
+  /** Successors of a state, which are ε-states (inverse of prevDAGIfEmpty) */
+  private final int[][] nextEps;
+
+  /** Successors of a state, only DAG edges (inverse of prevDAG) */
+  private final int[][] nextDAG;
+
+  /** Successors of a state, except \theta (inverse of prevNoStart) */
+  private final int[][] nextNoStart;
+
+  /** Maximum number of automaton states of an unfolded quantifier, see {@link Automaton} */
+  private int unfoldLimit = Automaton.UNFOLD_LIMIT;
+
+  /** Use linear space for tables with at least this number of cells, by default for tables that the threads don't keep */
+  private int linearSpaceFrom = Tables.POOL_LIMIT;
+
+  /** Number of rows that the linear space traceback stores completely */
+  private static final int BLOCK = 64;
+
+  /** Matcher algorithm without a regex, see {@link #compile(Expr)} */
+  public ArrayMyersMatcher() {
+    n = start = end = 0;
+    empty = null;
+    leaf = null;
+    predicate = null;
+    V_D = null;
+    prev = prevDAG = prevNoStart = prevDAGIfEmpty = prevIfNonEmpty = null;
+    isVD = null;
+    nextC = nextEps = nextDAG = nextNoStart = null;
+  }
+
+  /** Matcher for an automaton (creates index arrays) */
+  private ArrayMyersMatcher(Automaton a, int linearSpaceFrom) {
+    this.linearSpaceFrom = linearSpaceFrom;
+    n = a.states.size();
+    start = a.start.index;
+    end = a.end.index;
+    empty = new boolean[n];
+    leaf = new Expr[n];
+    predicate = new CharPredicate[n];
+    prev = new int[n][];
+    prevDAG = new int[n][];
+    prevNoStart = new int[n][];
+    prevDAGIfEmpty = new int[n][];
+    prevIfNonEmpty = new int[n][];
+
+    List<Integer> vD = new ArrayList<>();
+    for (State s : a.states) {
+      int j = s.index;
+      empty[j] = s.empty();
+      leaf[j] = s.expr;
+      predicate[j] = s.predicate;
+      if (!s.empty() || s == a.start) {
+        vD.add(j);
+      }
+      prev[j] = indices(s.prev, null);
+      prevDAG[j] = indices(s.prevDAG, null);
+      prevNoStart[j] = indices(s.prev, a.start);
+      prevDAGIfEmpty[j] = s.empty() ? prevDAG[j] : new int[0];
+      prevIfNonEmpty[j] = s.empty() ? new int[0] : prev[j];
+    }
+    V_D = vD.stream().mapToInt(Integer::intValue).toArray();
+    isVD = new long[(n + 63) >> 6];
+    set(isVD, V_D);
+    int[] all = IntStream.range(0, n).toArray();
+    nextC = inverse(prev, V_D);
+    nextEps = inverse(prevDAGIfEmpty, all);
+    nextDAG = inverse(prevDAG, all);
+    nextNoStart = inverse(prevNoStart, all);
+  }
+
+  /** Successors of each state, within 'states', given the predecessors of the states */
+  private int[][] inverse(int[][] predecessors, int[] states) {
+    List<List<Integer>> next = new ArrayList<>();
+    for (int j = 0; j < n; j++) {
+      next.add(new ArrayList<>());
+    }
+    for (int j : states) {
+      for (int t : predecessors[j]) {
+        next.get(t).add(j);
+      }
+    }
+    return next.stream().map(l -> l.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+  }
+
+  /** Initialize matcher for regex (create automaton and index arrays) */
+  private static ArrayMyersMatcher matcher(Expr expr, int unfoldLimit, int linearSpaceFrom) {
+    return new ArrayMyersMatcher(Automaton.create(expr, unfoldLimit), linearSpaceFrom);
+  }
+
+  /** Fold quantifiers that would need more than 'limit' automaton states when unfolded. Modifies this instance! */
+  public ArrayMyersMatcher unfolding(int limit) {
+    this.unfoldLimit = limit;
+    return this;
+  }
+
+  /** Use linear space for tables with at least 'cells' cells (0: always). Modifies this instance! */
+  public ArrayMyersMatcher linearSpace(int cells) {
+    this.linearSpaceFrom = cells;
+    return this;
+  }
+
+  /** Indices of states, without state 'exclude' */
+  private static int[] indices(List<State> states, State exclude) {
+    return states.stream().filter(t -> t != exclude).mapToInt(t -> t.index).toArray();
+  }
+
+  /** Whether the character c matches the leaf of state j */
+  private boolean matches(int j, char c) {
+    return predicate[j] != null && predicate[j].matches(c);
+  }
+
+  /** Weight of matching character c */
+  private static float matchWeight(char c) {
+    if (weight_match_special_chars == weight_match) {
+      return weight_match;
+    }
+    return specialChars.matcher(String.valueOf(c)).matches() ? weight_match_special_chars : weight_match;
+  }
+
+  /** Calculate matching from string to regex */
+  @Override
+  public Matching match(String str) {
+    if (usesLinearSpace(str)) {
+      return matchLinearSpace(str, Float.POSITIVE_INFINITY);
+    }
+    Tables tables = Tables.get(size(str));
+    fill(str, tables);
+    return traceback(str, tables);
+  }
+
+  /** Whether the matching of the string stores only O(log M) rows of the tables, see {@link #linearSpace(int)} */
+  public boolean usesLinearSpace(String str) {
+    return (long) (str.length() + 1) * n >= linearSpaceFrom;
+  }
+
+  /**
+   * Calculate matching from string to regex, ignoring partial matchings that cost more than maxCost.
+   * The cost of a cell in row i is weight_match * i minus its value. It never decreases along a way through the tables,
+   * so pruning does not change the cells of the best matching, if its cost is at most maxCost.
+   * Otherwise the matching is calculated without bound, and boundExceeded is set.
+   * With linear space (see {@link #linearSpace(int)}) the rows are not pruned, but the calculation stops at the first row
+   * where every cell costs more than maxCost.
+   */
+  @Override
+  public Matching match(String str, int maxCost) {
+    if (usesLinearSpace(str)) {
+      Matching m = matchLinearSpace(str, maxCost);
+      if (m == null) {
+        m = matchLinearSpace(str, Float.POSITIVE_INFINITY);
+        m.boundExceeded = true;
+      }
+      return m;
+    }
+    Tables tables = Tables.get(size(str));
+    if (!fillBounded(str, tables, maxCost)) {
+      Matching m = match(str);
+      m.boundExceeded = true;
+      return m;
+    }
+    return traceback(str, tables);
+  }
+
+  /**
+   * Calculate matching from string to regex, storing only O(log M) rows of the tables (M is the length of the string).
+   * The backpointers are followed by recomputing rows, dividing the rows (0, M] recursively in halves:
+   * first the upper half is traced back, starting from a checkpoint of the middle row, then the lower half.
+   * Only ranges of at most BLOCK rows are stored completely. This needs O(M log M) row calculations.
+   * The rows are calculated in order first, so the calculation stops at the first row where every cell costs more than maxCost.
+   * @return the matching, null if the bound was exceeded before the last row
+   */
+  private Matching matchLinearSpace(String str, float maxCost) {
+    int len = str.length();
+    Tables tables = Tables.get((BLOCK + 1) * n);
+    fillFirstRow(n, tables);
+    Checkpoint first = new Checkpoint(0, tables, 0, n);
+    int[] Cp0 = Arrays.copyOf(tables.Cp, n), Ip0 = Arrays.copyOf(tables.Ip, n);
+
+    Matching m = new Matching();
+    m.matches = new ArrayList<>();
+    m.str = str;
+    for (int i = 0; i < len; i++) {
+      m.matches.add(null);
+    }
+    m.boundExceeded = len == 0 && exceeds(tables.Cv[end], 0, maxCost);
+    long act = trace(str, tables, first, len, position(len, code(C, 0, end)), m, maxCost);
+    if (act == EXCEEDED) {
+      return null;
+    }
+    // row 0 has only cells of C and I
+    while (act != NONE) {
+      act = position(0, (kind(act) == C ? Cp0 : Ip0)[state(act)]);
+    }
+    return m;
+  }
+
+  /** Result of {@link #trace} if the bound was exceeded */
+  private static final long EXCEEDED = -2;
+
+  /**
+   * Follow the backpointers through the rows (from.i, b]
+   * @param from checkpoint of the row before the range
+   * @param b last row of the range
+   * @param act position of the cell to follow (see {@link #position(int, int)})
+   * @param m matching, updated for every match, and boundExceeded for the final cell
+   * @return the position of the first cell before the range (or NONE), EXCEEDED if every cell of a row costs more than maxCost
+   */
+  private long trace(String str, Tables tables, Checkpoint from, int b, long act, Matching m, float maxCost) {
+    int a = from.i;
+    if (act == NONE || row(act) <= a) {
+      return act;
+    }
+    if (b - a <= BLOCK) {
+      // recompute and store all rows of the range
+      from.restore(tables);
+      for (int i = a + 1; i <= b; i++) {
+        fillRow(str.charAt(i - 1), tables, (i - a) * n, (i - a - 1) * n);
+        if (exceedsAll(tables, (i - a) * n, i, maxCost)) {
+          return EXCEEDED;
+        }
+      }
+      if (b == str.length() && exceeds(tables.Cv[(b - a) * n + end], b, maxCost)) {
+        m.boundExceeded = true;
+      }
+      while (act != NONE && row(act) > a) {
+        int kind = kind(act), i = row(act), s = state(act);
+        int offset = (i - a) * n + s;
+        if (kind == M) {
+          m.matches.set(i - 1, leaf[s]);
+          act = position(i, tables.Mp[offset]);
+        } else {
+          act = position(i, (kind == C ? tables.Cp : kind == D ? tables.Dp : tables.Ip)[offset]);
+        }
+      }
+      return act;
+    }
+    int mid = (a + b) >>> 1;
+    if (row(act) > mid) {
+      Checkpoint checkpoint = advance(str, tables, from, mid, maxCost);
+      if (checkpoint == null) {
+        return EXCEEDED;
+      }
+      act = trace(str, tables, checkpoint, b, act, m, maxCost);
+      if (act == EXCEEDED) {
+        return act;
+      }
+    }
+    return trace(str, tables, from, mid, act, m, maxCost);
+  }
+
+  /** Number of cells of the tables for a string, which must fit into an array */
+  private int size(String str) {
+    long size = (long) (str.length() + 1) * n;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("string with " + str.length() + " chars too long for automaton with " + n + " states");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Calculate the rows after a checkpoint, until row i, with two rows of the tables
+   * @return the checkpoint of row i, null if every cell of a row costs more than maxCost
+   */
+  private Checkpoint advance(String str, Tables tables, Checkpoint from, int i, float maxCost) {
+    from.restore(tables);
+    int row = 0;
+    for (int j = from.i + 1; j <= i; j++) {
+      fillRow(str.charAt(j - 1), tables, n - row, row);
+      row = n - row;
+      if (exceedsAll(tables, row, j, maxCost)) {
+        return null;
+      }
+    }
+    return new Checkpoint(i, tables, row, n);
+  }
+
+  /** Whether every cell of C and D in row i, stored at offset 'row', costs more than maxCost (D is only calculated for V_D) */
+  private boolean exceedsAll(Tables tables, int row, int i, float maxCost) {
+    if (maxCost == Float.POSITIVE_INFINITY) {
+      return false;
+    }
+    for (int s = 0; s < n; s++) {
+      if (!exceeds(tables.Cv[row + s], i, maxCost)) {
+        return false;
+      }
+    }
+    for (int s : V_D) {
+      if (!exceeds(tables.Dv[row + s], i, maxCost)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Values and backpointers of a row, which are needed to calculate the next row */
+  private static class Checkpoint {
+
+    /** Row of the tables */
+    final int i;
+
+    final float[] Cv, Dv;
+
+    final int[] Cp, Dp;
+
+    /** Copy row i, stored at offset 'row' of the tables */
+    Checkpoint(int i, Tables tables, int row, int n) {
+      this.i = i;
+      Cv = Arrays.copyOfRange(tables.Cv, row, row + n);
+      Dv = Arrays.copyOfRange(tables.Dv, row, row + n);
+      Cp = Arrays.copyOfRange(tables.Cp, row, row + n);
+      Dp = Arrays.copyOfRange(tables.Dp, row, row + n);
+    }
+
+    /** Copy the row to offset 0 of the tables */
+    void restore(Tables tables) {
+      System.arraycopy(Cv, 0, tables.Cv, 0, Cv.length);
+      System.arraycopy(Dv, 0, tables.Dv, 0, Dv.length);
+      System.arraycopy(Cp, 0, tables.Cp, 0, Cp.length);
+      System.arraycopy(Dp, 0, tables.Dp, 0, Dp.length);
+    }
+  }
+
+  /** Initialize the first 'cells' cells of the tables and calculate row 0 */
+  private void fillFirstRow(int cells, Tables tables) {
+    float[] Cv = tables.Cv, Dv = tables.Dv, Iv = tables.Iv;
+    int[] Cp = tables.Cp, Dp = tables.Dp, Ip = tables.Ip;
+
+    // initialize border
+    Arrays.fill(Cv, 0, cells, NEG_INF);
+    Arrays.fill(Dv, 0, cells, NEG_INF);
+    Arrays.fill(Iv, 0, cells, NEG_INF);
+    Arrays.fill(Cp, 0, cells, NONE);
+    Arrays.fill(Dp, 0, cells, NONE);
+    Arrays.fill(Ip, 0, cells, NONE);
+
+    // apply algorithm in Figure 7 of [1], see MyersMatcher
+    Cv[start] = 0; // l.1
+    // l.3 (D[0] is already -inf)
+    for (int s = 1; s < n; s++) {
+      int t = argmax(Cv, 0, prevDAGIfEmpty[s]); // l.5
+      Cv[s] = t < 0 ? NEG_INF : Cv[t];
+      Cp[s] = t < 0 ? NONE : code(C, 0, t);
+    }
+    Iv[start] = NEG_INF; // l.6
+    insertions(0, Cv, Cp, Iv, Ip); // l.8 - l.12
+  }
+
+  /** Fill the tables with the algorithm in Figure 7 of [1] */
+  private void fill(String str, Tables tables) {
+    fillFirstRow((str.length() + 1) * n, tables);
+    for (int i = 1; i <= str.length(); i++) {
+      fillRow(str.charAt(i - 1), tables, i * n, (i - 1) * n);
+    }
+  }
+
+  /**
+   * Calculate a row of the tables (l.15 - l.29 of [1]), for character ai.
+   * The row is stored at offset 'row' of the tables, the previous row at offset 'last'.
+   * Backpointers are relative to the row, so they are independent of the offset.
+   * A deletion or a match points to the cell of the previous row, instead of copying its backpointer.
+   */
+  private void fillRow(char ai, Tables tables, int row, int last) {
+    float[] Cv = tables.Cv, Dv = tables.Dv, Iv = tables.Iv;
+    int[] Cp = tables.Cp, Dp = tables.Dp, Ip = tables.Ip, Mp = tables.Mp;
+    for (int s : V_D) { // l.15
+      float a = Cv[last + s] - g, b = Dv[last + s];
+      boolean takeA = Math.max(a, b) == a;
+      Dv[row + s] = (takeA ? a : b) + weight_delete;
+      Dp[row + s] = code(takeA ? C : D, 1, s);
+    }
+    for (int s = 0; s < n; s++) {
+      if (s == start || !empty[s]) { // l.18
+        int t = argmax(Cv, last, prev[s]);
+        float b = (t < 0 ? NEG_INF : Cv[last + t]) + (matches(s, ai) ? matchWeight(ai) : weight_subst);
+        if (Math.max(Dv[row + s], b) == Dv[row + s]) {
+          Cv[row + s] = Dv[row + s];
+          Cp[row + s] = code(D, 0, s);
+        } else {
+          Cv[row + s] = b;
+          Cp[row + s] = code(M, 0, s);
+          Mp[row + s] = code(C, 1, t);
+        }
+      } else { // l.20
+        int t = argmax(Cv, row, prevDAG[s]);
+        Cv[row + s] = t < 0 ? NEG_INF : Cv[row + t];
+        Cp[row + s] = t < 0 ? NONE : code(C, 0, t);
+      }
+    }
+    Iv[row + start] = NEG_INF; // l.23
+    insertions(row, Cv, Cp, Iv, Ip); // l.25 - l.29
+  }
+
+  /**
+   * Fill the tables like {@link #fill(String, int, Tables)}, but only the cells that cost at most maxCost.
+   * Only those cells are written, so the tables are not initialized beyond row 0.
+   * Bitsets mark the live cells of a row; every other cell counts as -inf.
+   * Only states with a live predecessor are visited.
+   * @return whether the final cell costs at most maxCost
+   */
+  private boolean fillBounded(String str, Tables tables, float maxCost) {
+    float[] Cv = tables.Cv, Dv = tables.Dv, Iv = tables.Iv;
+    int[] Cp = tables.Cp, Dp = tables.Dp, Ip = tables.Ip, Mp = tables.Mp;
+    fillFirstRow(n, tables);
+
+    int words = (n + 63) >> 6;
+    long[] lastC = new long[words], lastD = new long[words];
+    long[] liveC = new long[words], liveD = new long[words], liveI = new long[words], todo = new long[words];
+    for (int s = 0; s < n; s++) {
+      if (!exceeds(Cv[s], 0, maxCost)) {
+        set(liveC, s);
+      }
+    }
+
+    for (int i = 1; i <= str.length(); i++) {
+      char ai = str.charAt(i - 1);
+      int row = i * n, last = row - n;
+      long[] swap = lastC;
+      lastC = liveC;
+      liveC = swap;
+      swap = lastD;
+      lastD = liveD;
+      liveD = swap;
+      Arrays.fill(liveC, 0);
+      Arrays.fill(liveD, 0);
+      Arrays.fill(liveI, 0);
+
+      // l.15
+      for (int w = 0; w < words; w++) {
+        todo[w] = (lastC[w] | lastD[w]) & isVD[w];
+      }
+      for (int s = next(todo, 0); s >= 0; s = next(todo, s + 1)) {
+        float a = value(Cv, last, s, lastC) - g, b = value(Dv, last, s, lastD);
+        boolean takeA = Math.max(a, b) == a;
+        float v = (takeA ? a : b) + weight_delete;
+        if (!exceeds(v, i, maxCost)) {
+          Dv[row + s] = v;
+          Dp[row + s] = code(takeA ? C : D, 1, s);
+          set(liveD, s);
+        }
+      }
+
+      // l.18 and l.20
+      System.arraycopy(liveD, 0, todo, 0, words);
+      for (int t = next(lastC, 0); t >= 0; t = next(lastC, t + 1)) {
+        set(todo, nextC[t]);
+      }
+      for (int s = next(todo, 0); s >= 0; s = next(todo, s + 1)) {
+        float v;
+        int p;
+        if (s == start || !empty[s]) { // l.18
+          int t = argmax(Cv, last, prev[s], lastC);
+          float b = (t < 0 ? NEG_INF : Cv[last + t]) + (matches(s, ai) ? matchWeight(ai) : weight_subst);
+          float d = value(Dv, row, s, liveD);
+          if (Math.max(d, b) == d) {
+            v = d;
+            p = code(D, 0, s);
+          } else {
+            v = b;
+            p = code(M, 0, s);
+            Mp[row + s] = code(C, 1, t);
+          }
+        } else { // l.20
+          int t = argmax(Cv, row, prevDAG[s], liveC);
+          v = t < 0 ? NEG_INF : Cv[row + t];
+          p = t < 0 ? NONE : code(C, 0, t);
+        }
+        if (!exceeds(v, i, maxCost)) {
+          Cv[row + s] = v;
+          Cp[row + s] = p;
+          set(liveC, s);
+          set(todo, nextEps[s]);
+        }
+      }
+
+      // l.25
+      Arrays.fill(todo, 0);
+      for (int t = next(liveC, 0); t >= 0; t = next(liveC, t + 1)) {
+        set(todo, nextC[t]);
+      }
+      for (int s = next(todo, 1); s >= 0; s = next(todo, s + 1)) {
+        int ta = argmax(Iv, row, prevDAG[s], liveI);
+        int tb = argmax(Cv, row, prevIfNonEmpty[s], liveC);
+        float a = ta < 0 ? NEG_INF : Iv[row + ta];
+        float b = tb < 0 ? NEG_INF : Cv[row + tb] - g;
+        boolean takeA = Math.max(a, b) == a;
+        float v = (takeA ? a : b) + weight_insert;
+        if (!exceeds(v, i, maxCost)) {
+          Iv[row + s] = v;
+          Ip[row + s] = takeA ? Ip[row + ta] : Cp[row + tb];
+          set(liveI, s);
+          set(todo, nextDAG[s]);
+        }
+      }
+
+      // l.27
+      Arrays.fill(todo, 0);
+      for (int t = next(liveI, 0); t >= 0; t = next(liveI, t + 1)) {
+        set(todo, nextNoStart[t]);
+      }
+      for (int s = next(todo, 1); s >= 0; s = next(todo, s + 1)) {
+        int t = argmax(Iv, row, prevNoStart[s], liveI);
+        float b = t < 0 ? NEG_INF : Iv[row + t] + weight_insert;
+        if (Math.max(value(Iv, row, s, liveI), b) != value(Iv, row, s, liveI) && !exceeds(b, i, maxCost)) {
+          Iv[row + s] = b;
+          Ip[row + s] = Ip[row + t];
+          if (!get(liveI, s)) {
+            set(liveI, s);
+            set(todo, nextNoStart[s]);
+          }
+        }
+      }
+
+      // l.29
+      for (int s = next(liveI, 1); s >= 0; s = next(liveI, s + 1)) {
+        if (Math.max(value(Cv, row, s, liveC), Iv[row + s]) != value(Cv, row, s, liveC)) {
+          Cv[row + s] = Iv[row + s];
+          Cp[row + s] = code(I, 0, s);
+          set(liveC, s);
+        }
+      }
+
+      // every way through the tables exceeds the bound
+      if (next(liveC, 0) < 0 && next(liveD, 0) < 0) {
+        return false;
+      }
+    }
+    return get(liveC, end);
+  }
+
+  /** Whether a cell in row i with value v costs more than maxCost */
+  private static boolean exceeds(float v, int i, float maxCost) {
+    return weight_match_max * i - v > maxCost;
+  }
+
+  /** Value of state s in a row, -inf if it is not live */
+  private static float value(float[] table, int row, int s, long[] live) {
+    return get(live, s) ? table[row + s] : NEG_INF;
+  }
+
+  /** Like {@link #argmax(float[], int, int[])}, but only for live states */
+  private static int argmax(float[] table, int row, int[] states, long[] live) {
+    float m = NEG_INF;
+    int max = -1;
+    for (int t : states) {
+      if (get(live, t) && m < table[row + t]) {
+        max = t;
+        m = table[row + t];
+      }
+    }
+    return max;
+  }
+
+  /** Index of the first bit set at or after 'from', -1 if there is none */
+  private static int next(long[] bits, int from) {
+    int w = from >> 6;
+    if (w >= bits.length) {
+      return -1;
+    }
+    long word = bits[w] & (-1L << from);
+    while (word == 0) {
+      if (++w == bits.length) {
+        return -1;
+      }
+      word = bits[w];
+    }
+    return (w << 6) + Long.numberOfTrailingZeros(word);
+  }
+
+  private static boolean get(long[] bits, int i) {
+    return (bits[i >> 6] & 1L << i) != 0;
+  }
+
+  private static void set(long[] bits, int i) {
+    bits[i >> 6] |= 1L << i;
+  }
+
+  private static void set(long[] bits, int[] indices) {
+    for (int i : indices) {
+      bits[i >> 6] |= 1L << i;
+    }
+  }
+
+  /** Trace the way back from the final cell */
+  private Matching traceback(String str, Tables tables) {
+    int[] Cp = tables.Cp, Dp = tables.Dp, Ip = tables.Ip, Mp = tables.Mp;
+    Matching m = new Matching();
+    m.matches = new ArrayList<>();
+    m.str = str;
+    for (int i = 0; i < str.length(); i++) {
+      m.matches.add(null);
+    }
+    long act = position(str.length(), code(C, 0, end));
+    while (act != NONE) {
+      int kind = kind(act), i = row(act), cell = i * n + state(act);
+      if (kind == M) {
+        m.matches.set(i - 1, leaf[state(act)]);
+        act = position(i, Mp[cell]);
+      } else {
+        act = position(i, (kind == C ? Cp : kind == D ? Dp : Ip)[cell]);
+      }
+    }
+    return m;
+  }
+
+  /** Tables C, D, I (values and backpointers) and M (backpointers), confined to one thread */
+  private static class Tables {
+
+    /** Tables with at most this number of cells are kept for the next match of the thread (7 arrays of 4 bytes per cell) */
+    private static final int POOL_LIMIT = 1 << 16;
+
+    /** Tables of the current thread */
+    private static final ThreadLocal<Tables> pool = ThreadLocal.withInitial(() -> new Tables(0));
+
+    final float[] Cv, Dv, Iv;
+
+    final int[] Cp, Dp, Ip, Mp;
+
+    Tables(int size) {
+      Cv = new float[size];
+      Dv = new float[size];
+      Iv = new float[size];
+      Cp = new int[size];
+      Dp = new int[size];
+      Ip = new int[size];
+      Mp = new int[size];
+    }
+
+    /** Tables with at least 'size' cells. The tables of a thread are reused, unless they are too big. */
+    static Tables get(int size) {
+      if (size > POOL_LIMIT) {
+        return new Tables(size);
+      }
+      Tables t = pool.get();
+      if (t.Cv.length < size) {
+        t = new Tables(Math.min(POOL_LIMIT, Math.max(size, 2 * t.Cv.length)));
+        pool.set(t);
+      }
+      return t;
+    }
+  }
+
+  /** Lines 8-12 (resp. 25-29) of [1], for the row stored at offset 'row' */
+  private void insertions(int row, float[] Cv, int[] Cp, float[] Iv, int[] Ip) {
+    for (int s = 1; s < n; s++) { // l.25
+      int ta = argmax(Iv, row, prevDAG[s]);
+      int tb = argmax(Cv, row, prevIfNonEmpty[s]);
+      float a = ta < 0 ? NEG_INF : Iv[row + ta];
+      float b = tb < 0 ? NEG_INF : Cv[row + tb] - g;
+      if (Math.max(a, b) == a) {
+        Iv[row + s] = a + weight_insert;
+        Ip[row + s] = ta < 0 ? NONE : Ip[row + ta];
+      } else {
+        Iv[row + s] = b + weight_insert;
+        Ip[row + s] = Cp[row + tb];
+      }
+    }
+    for (int s = 1; s < n; s++) { // l.27
+      int t = argmax(Iv, row, prevNoStart[s]);
+      float b = t < 0 ? NEG_INF : Iv[row + t] + weight_insert;
+      if (Math.max(Iv[row + s], b) != Iv[row + s]) {
+        Iv[row + s] = b;
+        Ip[row + s] = Ip[row + t];
+      }
+    }
+    for (int s = 1; s < n; s++) { // l.29
+      if (Math.max(Cv[row + s], Iv[row + s]) != Cv[row + s]) {
+        Cv[row + s] = Iv[row + s];
+        Cp[row + s] = code(I, 0, s);
+      }
+    }
+  }
+
+  /** Index of the state with the highest value (first one if there are several), -1 if all values are -inf */
+  private static int argmax(float[] table, int row, int[] states) {
+    float m = NEG_INF;
+    int max = -1;
+    for (int t : states) {
+      if (m < table[row + t]) {
+        max = t;
+        m = table[row + t];
+      }
+    }
+    return max;
+  }
+
+  /** Backpointer to the cell of state s of a table, 'back' rows (0 or 1) before the row of the backpointer */
+  private int code(int kind, int back, int s) {
+    return (kind << 1 | back) * n + s;
+  }
+
+  /** Position of the cell that a backpointer of row i references: row, kind and state in a long, NONE for NONE */
+  private long position(int i, int code) {
+    if (code == NONE) {
+      return NONE;
+    }
+    int q = code / n;
+    return ((long) (i - (q & 1)) * 4 + (q >> 1)) * n + code % n;
+  }
+
+  private int row(long position) {
+    return (int) (position / n / 4);
+  }
+
+  private int kind(long position) {
+    return (int) (position / n % 4);
+  }
+
+  private int state(long position) {
+    return (int) (position % n);
+  }
+
+  @Override
+  public Matching match(Expr e, String s) {
+    return matcher(e, unfoldLimit, linearSpaceFrom).match(s);
+  }
+
+  @Override
+  public CompiledMatcher compile(Expr e) {
+    return matcher(e, unfoldLimit, linearSpaceFrom);
+  }
+
+  @Override
+  public String info() {
+    return "myers-array";
+  }
+
+  public static void main(String[] args) {
+    ArrayMyersMatcher m;
+    m = matcher(RegexParser.parse("\\d{2}/\\d{2}/\\d{4}"), Automaton.UNFOLD_LIMIT, 0);
+    System.out.println(m.match("April 20, 2001").matches);
+  }
+}
@@ -1,6 +1,7 @@
 package fr.telecom_paristech.dbweb.regexrepair.matcher.myers;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,10 +10,15 @@ import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate.Flavor;
 
 /**
  * Represents a finite state automaton (ε-NFA).
  * It is based on [1]. Characters are mapped to states, not transitions.
+ * Quantifiers are unfolded, unless this would need more states than a limit. Then they are folded into a loop (a{3,500} -&gt; a+).
+ * The loop accepts any number of iterations. A matching still maps characters to leaves of the regex,
+ * and the iterations of the quantifiers are checked later with {@link fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.ExprPos}.
  * [1] E. W. Myers and W. Miller, “Approximate matching of regular expressions,” Bulletin of mathematical biology, vol. 51, no. 1, pp. 5–37, 1989.
  */
 class Automaton {
@@ -26,12 +32,56 @@ class Automaton {
   /** The end (or final) state of the automaton */
   State end;
 
+  /** Default maximum number of states of an unfolded quantifier */
+  static final int UNFOLD_LIMIT = 1000;
+
+  /**
+   * Generate the automaton F_R' of [1] for a regex, i.e., with an ε-state as start state, and with indexed and compiled states
+   * @param expr
+   */
+  static Automaton create(Expr expr) {
+    return create(expr, UNFOLD_LIMIT);
+  }
+
+  /**
+   * Generate the automaton F_R' of [1] for a regex, see {@link #create(Expr)}
+   * @param expr
+   * @param unfoldLimit maximum number of states of an unfolded quantifier
+   */
+  static Automaton create(Expr expr, int unfoldLimit) {
+    Map<Expr, State> exprToState = new HashMap<>();
+    Automaton a = Automaton.walk(expr, exprToState, unfoldLimit);
+    // transform to F_R'
+    if (a.states.size() == 0) {
+      State n = new State();
+      a.states.add(0, n);
+      a.start = n;
+      a.end = n;
+    } else if (!a.start.empty()) {
+      State n = new State();
+      a.states.add(0, n);
+      a.start.prev.add(n);
+      a.start.prevDAG.add(n);
+      a.start = n;
+    }
+    int i = 0;
+    Map<String, CharPredicate> labelToPredicate = new HashMap<>();
+    for (State s : a.states) {
+      s.index = i++;
+      if (!s.empty()) {
+        s.predicate = labelToPredicate.computeIfAbsent(s.label, l -> CharPredicate.compile(l, Flavor.RE2J));
+      }
+    }
+    return a;
+  }
+
   /**
    * Walk over regex to generate automaton
    * @param expr
    * @param leafToState accumulator, mapping from leaf nodes of the regular expression to their state
+   * @param unfoldLimit fold quantifiers that would need more states
    */
-  static Automaton walk(Expr expr, Map<Expr, State> leafToState) {
+  static Automaton walk(Expr expr, Map<Expr, State> leafToState, int unfoldLimit) {
     // th (theta): start of sub-automaton
     // phi: end of sub-automaton
 
@@ -39,7 +89,7 @@ class Automaton {
     if (expr instanceof Conc) {
       // th=th1--(automata1)-->phi1 --> th2--(automata2)-->phi2=phi
       for (Expr child : ((AggExpr) expr).getChildren()) {
-        Automaton c = walk(child, leafToState);
+        Automaton c = walk(child, leafToState, unfoldLimit);
         a.states.addAll(c.states);
         if (a.start == null) {
           a.start = c.start;
@@ -58,7 +108,7 @@ class Automaton {
       a.end = new State();
       a.states.add(a.start);
       for (Expr child : ((AggExpr) expr).getChildren()) {
-        Automaton c = walk(child, leafToState);
+        Automaton c = walk(child, leafToState, unfoldLimit);
         a.start.transition(c.start, true);
         c.end.transition(a.end, true);
         a.states.addAll(c.states);
@@ -67,16 +117,20 @@ class Automaton {
 
     } else if (expr instanceof Repeat) {
       Repeat r = (Repeat) expr;
-      // kleene star
-      if (r.getMin() == 0 && r.getMax() == Repeat.STAR) {
-        //   /--------------------------------\
+      Automaton first = walk(r.getChild(), leafToState, unfoldLimit);
+      long copies = r.getMax() == Repeat.STAR ? r.getMin() + 1 : r.getMax();
+      // kleene star, or quantifier with too many states
+      if (r.getMin() == 0 && r.getMax() == Repeat.STAR || copies > 1 && copies * first.states.size() > unfoldLimit) {
+        //   /--------------------------------\   (only if min is 0)
         // th---> th1---(automata)---->phi1----&->psi
         //          ^------------------/
         a.start = new State();
         a.end = new State();
         a.states.add(a.start);
-        a.start.transition(a.end, true);
-        Automaton c = walk(((Repeat) expr).getChild(), leafToState);
+        if (r.getMin() == 0) {
+          a.start.transition(a.end, true);
+        }
+        Automaton c = first;
         c.end.transition(c.start, false);
         a.start.transition(c.start, true);
         c.end.transition(a.end, true);
@@ -88,7 +142,8 @@ class Automaton {
         // (example: unfold 2x)
         // th=th1---(automata)--->phi1--->th2---(automata)--->psi2=psi
         for (int i = 0; i < r.getMin(); i++) {
-          Automaton c = walk(r.getChild(), leafToState);
+          Automaton c = first != null ? first : walk(r.getChild(), leafToState, unfoldLimit);
+          first = null;
           a.states.addAll(c.states);
           if (a.start == null) {
             a.start = c.start;
@@ -109,7 +164,8 @@ class Automaton {
           //        /--------------------------------\
           // last_psi---> th1---(automata)---->phi1------>psi
           //                ^------------------/
-          Automaton c = walk(r.getChild(), leafToState);
+          Automaton c = first != null ? first : walk(r.getChild(), leafToState, unfoldLimit);
+          first = null;
           a.states.addAll(c.states);
           a.end.transition(c.start, true);
           c.end.transition(c.start, false);
@@ -132,7 +188,8 @@ class Automaton {
             a.states.add(a.start);
           }
           for (int i = r.getMin(); i < r.getMax(); i++) {
-            Automaton c = walk(r.getChild(), leafToState);
+            Automaton c = first != null ? first : walk(r.getChild(), leafToState, unfoldLimit);
+            first = null;
             a.states.addAll(c.states);
             a.end.transition(n, true);
             a.end.transition(c.start, true);
@@ -1,27 +1,27 @@
 package fr.telecom_paristech.dbweb.regexrepair.matcher.myers;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Collections;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
 import fr.telecom_paristech.dbweb.regexrepair.data.TextSpan;
 import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher;
 import fr.telecom_paristech.dbweb.regexrepair.matcher.Matcher;
 
 /**
  * Implements an approximative regex matching algorithm.
  * See [1] for more details.
  * 
- * Quantifiers are unwrapped (a{3} -&gt; aaa).
+ * Quantifiers are unwrapped (a{3} -&gt; aaa), unless this needs too many states (see {@link Automaton}).
+ * An instance returned by {@link #compile(Expr)} holds the automaton of one regex, and can match many strings.
+ * It is immutable, so it can be used by several threads at the same time. Each match allocates its own tables.
  * 
  * [1] E. W. Myers and W. Miller, “Approximate matching of regular expressions,” Bulletin of mathematical biology, vol. 51, no. 1, pp. 5–37, 1989.
  */
-public class MyersMatcher implements Matcher {
+public class MyersMatcher implements Matcher, CompiledMatcher {
 
   /* Constants of the algorithm, see [1] */
   private final float g = 1;
@@ -40,16 +40,22 @@ public class MyersMatcher implements Matcher {
   private static final java.util.regex.Pattern specialChars = java.util.regex.Pattern.compile("\\p{Punct}");
 
   /** V in topological order */
-  private List<State> V;
+  private final List<State> V;
 
   /** V without \theta in topological order */
-  private List<State> V_tail;
+  private final List<State> V_tail;
 
   /** V - {t : \lambda(t) = \epsilon and t != \theta } in topological order */
-  private List<State> V_D;
+  private final List<State> V_D;
 
   /** Finate state automaton representation of the regex */
-  private Automaton a;
+  private final Automaton a;
+
+  /** Predecessors of each state (by index) without \theta */
+  private final List<List<State>> prevNoStart;
+
+  /** No states */
+  private static final List<State> NONE = Collections.emptyList();
 
   /** A cell of the dynamic programming table */
   private class Cell {
@@ -135,10 +141,11 @@ public class MyersMatcher implements Matcher {
       return r;
     }
 
-    /** Weight, if we would match or substitute s with e */
-    Cell subst(TextSpan s, Expr e) {
+    /** Weight, if we would match or substitute s with the leaf of state t */
+    Cell subst(TextSpan s, State t) {
       Cell r = this.copy();
-      if (e != null && com.google.re2j.Pattern.compile(e.toRegexString()).matches(s.spanString())) {
+      Expr e = t.expr;
+      if (t.predicate != null && t.predicate.matches(s.text.charAt(s.start))) {
         if (weight_match_special_chars == weight_match) {
           r.val += weight_match;
         } else {
@@ -166,42 +173,57 @@ public class MyersMatcher implements Matcher {
   }
 
   /** Cells at the border */
-  Cell negInf = new Cell(Float.NEGATIVE_INFINITY);
+  private final Cell negInf = new Cell(Float.NEGATIVE_INFINITY);
+
+  /** Maximum number of automaton states of an unfolded quantifier, see {@link Automaton} */
+  private int unfoldLimit = Automaton.UNFOLD_LIMIT;
+
+  /** Matcher algorithm without a regex, see {@link #compile(Expr)} */
+  public MyersMatcher() {
+    this.a = null;
+    this.V = null;
+    this.V_D = null;
+    this.V_tail = null;
+    this.prevNoStart = null;
+  }
 
-  /** Initialize matcher for regex (create automaton) */
-  private static MyersMatcher matcher(Expr expr) {
-    MyersMatcher result = new MyersMatcher();
-
-    Map<Expr, State> exprToState = new HashMap<>();
-    Automaton a = Automaton.walk(expr, exprToState);
-    // transform to F_R'
-    if (a.states.size() == 0) {
-      State n = new State();
-      a.states.add(0, n);
-      a.start = n;
-      a.end = n;
-    } else if (!a.start.empty()) {
-      State n = new State();
-      a.states.add(0, n);
-      a.start.prev.add(n);
-      a.start.prevDAG.add(n);
-      a.start = n;
-    }
-    result.a = a;
-    result.V = a.states;
-    result.V_D = new ArrayList<>(a.states);
-    result.V_D.removeIf(t -> t.label.isEmpty() && t != a.start);
-    result.V_tail = result.V.subList(1, result.V.size());
-    int i = 0;
+  /** Matcher for an automaton, which must not be modified afterwards */
+  private MyersMatcher(Automaton a) {
+    this.a = a;
+    this.V = Collections.unmodifiableList(a.states);
+    List<State> vD = new ArrayList<>(a.states);
+    vD.removeIf(t -> t.label.isEmpty() && t != a.start);
+    this.V_D = Collections.unmodifiableList(vD);
+    this.V_tail = V.subList(1, V.size());
+    List<List<State>> prevNoStart = new ArrayList<>(a.states.size());
     for (State s : a.states) {
-      s.index = i++;
+      List<State> l = new ArrayList<>(s.prev);
+      l.removeIf(t -> t == a.start);
+      prevNoStart.add(Collections.unmodifiableList(l));
     }
+    this.prevNoStart = Collections.unmodifiableList(prevNoStart);
+  }
+
+  /** Initialize matcher for regex (create automaton) */
+  private static MyersMatcher matcher(Expr expr, int unfoldLimit) {
+    return new MyersMatcher(Automaton.create(expr, unfoldLimit));
+  }
 
-    return result;
+  /** Fold quantifiers that would need more than 'limit' automaton states when unfolded. Modifies this instance! */
+  public MyersMatcher unfolding(int limit) {
+    this.unfoldLimit = limit;
+    return this;
   }
 
   /** Calculate matching from string to regex */
+  @Override
   public Matching match(String str) {
+    return match(str, Integer.MAX_VALUE);
+  }
+
+  /** Calculate matching from string to regex. Does not prune cells, but reports whether the matching costs more than maxCost */
+  @Override
+  public Matching match(String str, int maxCost) {
     // declare tables
     int M = str.length();
     Cell[][] C = new Cell[str.length() + 1][a.states.size()];
@@ -223,14 +245,14 @@ public class MyersMatcher implements Matcher {
       D[0][s.index].set(negInf); // l.3
     }
     for (State s : V_tail) {
-      C[0][s.index].set(max(C, 0, filter(s.prevDAG, t -> s.empty()))); // l.5
+      C[0][s.index].set(max(C, 0, s.empty() ? s.prevDAG : NONE)); // l.5
     }
     I[0][a.start.index].set(negInf); // l.6
     for(State s : V_tail) {
-      I[0][s.index].set(max(max(I, 0, s.prevDAG), max(C, 0, filter(s.prev, t -> !s.empty())).plus(-g)).insert(s.expr)); // l.8
+      I[0][s.index].set(max(max(I, 0, s.prevDAG), max(C, 0, s.empty() ? NONE : s.prev).plus(-g)).insert(s.expr)); // l.8
     }
     for(State s : V_tail) {
-      I[0][s.index].set(max(I[0][s.index], max(I, 0, filter(s.prev, t -> t != a.start)).insert(s.expr))); // l.10
+      I[0][s.index].set(max(I[0][s.index], max(I, 0, prevNoStart.get(s.index)).insert(s.expr))); // l.10
     }
     for (State s : V_tail) {
       C[0][s.index].set(max(C[0][s.index], I[0][s.index])); // l.12
@@ -242,17 +264,17 @@ public class MyersMatcher implements Matcher {
       }
       for (State s : V) {
         if (s == a.start || !s.empty()) {
-          C[i][s.index].set(max(D[i][s.index], max(C, i - 1, s.prev).subst(ai, s.expr))); // l.18
+          C[i][s.index].set(max(D[i][s.index], max(C, i - 1, s.prev).subst(ai, s))); // l.18
         } else {
           C[i][s.index].set(max(C, i, s.prevDAG)); // l.20
         }
       }
       I[i][a.start.index].set(negInf); // l. 23
       for (State s : V_tail) {
-        I[i][s.index].set(max(max(I, i, s.prevDAG), max(C, i, filter(s.prev, t -> !s.empty())).plus(-g)).insert(s.expr)); // l.25
+        I[i][s.index].set(max(max(I, i, s.prevDAG), max(C, i, s.empty() ? NONE : s.prev).plus(-g)).insert(s.expr)); // l.25
       }
       for (State s : V_tail) {
-        I[i][s.index].set(max(I[i][s.index], max(I, i, filter(s.prev, t -> t != a.start)).insert(s.expr))); // l.27
+        I[i][s.index].set(max(I[i][s.index], max(I, i, prevNoStart.get(s.index)).insert(s.expr))); // l.27
       }
       for (State s : V_tail) {
         C[i][s.index].set(max(C[i][s.index], I[i][s.index])); // l.29
@@ -273,15 +295,11 @@ public class MyersMatcher implements Matcher {
       }
       act = act.prev;
     }
+    m.boundExceeded = Math.max(weight_match, weight_match_special_chars) * M - C[M][a.end.index].val > maxCost;
 
     return m;
   }
 
-  /** Helper function to filter list of states based on a predicate */
-  private List<State> filter(List<State> prevDAG, Function<State, Boolean> cnd) {
-    return prevDAG.stream().filter(cnd::apply).collect(Collectors.toList());
-  }
-
   /** Find cell with the highest value, representing the result of the algorithm */
   private Cell max(Cell[][] matrix, int row, List<State> states) {
     float m = negInf.val;
@@ -310,7 +328,12 @@ public class MyersMatcher implements Matcher {
 
   @Override
   public Matching match(Expr e, String s) {
-    return matcher(e).match(s);
+    return matcher(e, unfoldLimit).match(s);
+  }
+
+  @Override
+  public CompiledMatcher compile(Expr e) {
+    return matcher(e, unfoldLimit);
   }
 
   @Override
@@ -320,7 +343,7 @@ public class MyersMatcher implements Matcher {
 
   public static void main(String[] args) {
     MyersMatcher m;
-    m = matcher(RegexParser.parse("\\d{2}/\\d{2}/\\d{4}"));
+    m = matcher(RegexParser.parse("\\d{2}/\\d{2}/\\d{4}"), Automaton.UNFOLD_LIMIT);
     System.out.println(m.match("April 20, 2001"));
   }
 }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate;
 
 /**
  * Represents a state of a finite state automaton
@@ -16,6 +17,9 @@ class State {
   /** Reference to the regex leaf that corresponds to this automaton state */
   Expr expr;
 
+  /** Compiled label, null for ε-states */
+  CharPredicate predicate;
+
   /** Unique identifier for the state (relative to the automaton) */
   int index = 0;
 
@@ -1,14 +1,18 @@
 package fr.telecom_paristech.dbweb.regexrepair.simple;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-/** Runs Meyer's algorithm */
+/**
+ * Runs Meyer's algorithm.
+ * The cells are stored in int arrays, indexed by i * (number of leaf nodes) + j.
+ * Cell objects are only created on demand, e.g. for {@link #cell(int, int)}; the cells passed to the {@link UpdateFunction} are reused.
+ * Of several cells with the same score, the first one is chosen: the cell above, then the predecessors by increasing j.
+ */
 public class MyerMatrix {
 
   /** Regex on which we work */
@@ -20,8 +24,26 @@ public class MyerMatrix {
   /** Enumeration of all leaf nodes of the regex*/
   public List<Regex> leafNodes;
 
-  /** The matrix */
-  public List<Map<Regex, Cell>> matrix = new ArrayList<>();
+  /** Number of leaf nodes (columns) */
+  private final int n;
+
+  /** Score of each cell, computed by the update function */
+  private final int[] score;
+
+  /** Number of skipped leaf nodes in the regex */
+  private final int[] skips;
+
+  /** Number of characters matched so far */
+  private final int[] numMatchedCharacters;
+
+  /** Number of special characters matched */
+  private final int[] numMatchedSpecialCharacters;
+
+  /** Backpointers */
+  private final int[] previousI, previousJ;
+
+  /** Column of the next matching cell when following the backpointers (the cell itself if it matches) */
+  private final int[] matchingJ;
 
   /**
    * Runs Meyer's algorithm, Works only if the word and the regex start and
@@ -31,72 +53,108 @@ public class MyerMatrix {
     regex = r;
     string = s;
     leafNodes = r.leafNodes();
-    // Set the j index
-    for (int j = 0; j < leafNodes.size(); j++) {
+    n = leafNodes.size();
+    int size = string.length() * n;
+    score = new int[size];
+    skips = new int[size];
+    numMatchedCharacters = new int[size];
+    numMatchedSpecialCharacters = new int[size];
+    previousI = new int[size];
+    previousJ = new int[size];
+    matchingJ = new int[size];
+
+    // Set the j index, and get the predecessors from the automaton
+    Map<Regex, Integer> index = new IdentityHashMap<>();
+    for (int j = 0; j < n; j++) {
       leafNodes.get(j).jIndex = j;
+      index.put(leafNodes.get(j), j);
     }
+    PositionAutomaton automaton = r.automaton();
+    int[][] previous = new int[n][];
+    BitSet[] isPrevious = new BitSet[n];
+    boolean[] special = new boolean[n];
+    for (int j = 0; j < n; j++) {
+      isPrevious[j] = new BitSet();
+      int[] automatonPrevious = automaton.previous(leafNodes.get(j));
+      for (int k : automatonPrevious == null ? new int[0] : automatonPrevious) {
+        Integer prev = index.get(automaton.leaf(k));
+        if (prev != null) {
+          isPrevious[j].set(prev);
+        }
+      }
+      previous[j] = isPrevious[j].stream().toArray();
+      special[j] = leafNodes.get(j).isSpecialChar();
+    }
+
+    // Reused for the update function
+    Cell newCell = new Cell(), predecessor = new Cell();
+
     // Run through all lines (= characters of the string)
     for (int i = 0; i < string.length(); i++) {
-      Map<Regex, Cell> previousLine = matrix.isEmpty() ? null : matrix.get(matrix.size() - 1);
-      Map<Regex, Cell> currentLine = new HashMap<>();
-      matrix.add(currentLine);
+      char c = string.charAt(i);
+      int line = i * n, previousLine = line - n;
 
       // Run through the regex
-      for (int j = 0; j < leafNodes.size(); j++) {
+      for (int j = 0; j < n; j++) {
+        int cell = line + j;
         Regex leafNode = leafNodes.get(j);
-        Cell newCell;
 
         // If s_i \in L(r_j)...
-        if (leafNode.matchesChar(string.charAt(i))) {
-          if (leafNode.previous().isEmpty()) {
-            newCell = new Cell();
-            newCell.score = 1;
-            newCell.numMatchedCharacters = 1;
-            newCell.numMatchedSpecialCharacters = leafNode.isSpecialChar() ? 1 : 0;
-            newCell.previousI = -1;
-            newCell.previousJ = -1;
+        if (leafNode.matchesChar(c)) {
+          matchingJ[cell] = j;
+          if (previous[j].length == 0) {
+            score[cell] = 1;
+            numMatchedCharacters[cell] = 1;
+            numMatchedSpecialCharacters[cell] = special[j] ? 1 : 0;
+            previousI[cell] = -1;
+            previousJ[cell] = -1;
           } else {
-            Set<Cell> entourage = new HashSet<>();
-            for (Regex prev : leafNode.previous()) {
-              Cell predecessor = previousLine == null ? new Cell() : previousLine.get(prev);
-              // Walk to the next matching predecessor
-              Cell walkingPredecessor = predecessor;
-              while (!walkingPredecessor.matches()) {
-                walkingPredecessor = walkingPredecessor.predecessor();
+            boolean found = false;
+            for (int prev : previous[j]) {
+              if (i == 0) {
+                // an empty cell, pointing to the first leaf, which matches the first character
+                predecessor.set(0, 0, 0, 0, 0, 0, 0);
+              } else {
+                predecessor.load(i - 1, prev, previousLine + prev);
               }
-              newCell = new Cell();
-              newCell.numMatchedCharacters = predecessor.numMatchedCharacters + 1;
-              newCell.numMatchedSpecialCharacters = predecessor.numMatchedSpecialCharacters + (leafNode.isSpecialChar() ? 1 : 0);
-              newCell.previousI = i - 1;
-              newCell.previousJ = prev.jIndex;
-              newCell.skips = predecessor.skips;
               // If the next matching predecessor is not a previous node, we have skips
-              if (!leafNode.previous().contains(walkingPredecessor.leafNode())) {
-                newCell.skips++;
-              }
+              int walkingJ = i == 0 ? 0 : matchingJ[previousLine + prev];
+              newCell.set(i, j, i - 1, prev, predecessor.skips + (isPrevious[j].get(walkingJ) ? 0 : 1), predecessor.numMatchedCharacters + 1,
+                  predecessor.numMatchedSpecialCharacters + (special[j] ? 1 : 0));
               newCell.score = f.score(newCell, predecessor, leafNode);
-              entourage.add(newCell);
+              if (!found || newCell.score > score[cell]) {
+                found = true;
+                newCell.store(cell);
+              }
             }
-            newCell = bestOf(entourage);
           }
         } else { // If s_i \not\in L(r_j)...
-          Set<Cell> entourage = new HashSet<>();
-          if (previousLine != null) {
-            entourage.add(previousLine.get(leafNodes.get(j)));
+          // Find the best cell in the entourage
+          int best = -1;
+          if (i > 0) {
+            best = previousLine + j;
           }
-          for (Regex prev : leafNode.previous()) {
-            if (previousLine != null) {
-              entourage.add(previousLine.get(prev));
+          for (int prev : previous[j]) {
+            if (i > 0 && (best < 0 || score[previousLine + prev] > score[best])) {
+              best = previousLine + prev;
             }
-            if (prev.jIndex < j) {
-              entourage.add(currentLine.get(prev));
+            if (prev < j && (best < 0 || score[line + prev] > score[best])) {
+              best = line + prev;
             }
           }
-          newCell = bestOf(entourage).copy();
+          // Copy it, and set the backpointers to it (the skips are not copied)
+          if (best < 0) {
+            previousI[cell] = 0;
+            previousJ[cell] = 0;
+          } else {
+            score[cell] = score[best];
+            numMatchedCharacters[cell] = numMatchedCharacters[best];
+            numMatchedSpecialCharacters[cell] = numMatchedSpecialCharacters[best];
+            previousI[cell] = best / n;
+            previousJ[cell] = best % n;
+          }
+          matchingJ[cell] = matchingJ[previousI[cell] * n + previousJ[cell]];
         }
-        newCell.i = i;
-        newCell.j = j;
-        currentLine.put(leafNode, newCell);
       }
     }
   }
@@ -105,25 +163,25 @@ public class MyerMatrix {
   public List<Regex> matching() {
     List<Regex> result = new ArrayList<>();
     int i = string.length() - 1;
-    int j = leafNodes.size() - 1;
+    int j = n - 1;
     // Follow the backpointers
     while (j >= 0 && i >= 0) {
-      Cell c = cell(i, j);
-      if (c.previousI == -1) {
-        if (c.score > 0) {
+      int c = i * n + j;
+      if (previousI[c] == -1) {
+        if (score[c] > 0) {
           result.add(leafNodes.get(j));
         } else {
           result.add(null);
         }
-      } else if (c.previousI < i) {
-        if (c.betterThan(matrix.get(c.previousI).get(leafNodes.get(c.previousJ)))) {
+      } else if (previousI[c] < i) {
+        if (score[c] > score[previousI[c] * n + previousJ[c]]) {
           result.add(leafNodes.get(j));
         } else {
           result.add(null);
         }
       }
-      j = c.previousJ;
-      i = c.previousI;
+      j = previousJ[c];
+      i = previousI[c];
     }
     Collections.reverse(result);
     return (result);
@@ -132,14 +190,14 @@ public class MyerMatrix {
   @Override
   public String toString() {
     StringBuilder b = new StringBuilder("Myer's matrix for regex " + regex + "\n\n");
-    for (int j = 0; j < leafNodes.size(); j++) {
+    for (int j = 0; j < n; j++) {
       b.append("\t\t").append(leafNodes.get(j));
     }
     b.append('\n');
-    for (int i = 0; i < matrix.size(); i++) {
+    for (int i = 0; i < string.length(); i++) {
       b.append(string.charAt(i));
-      for (int j = 0; j < matrix.get(i).size(); j++) {
-        b.append('\t').append(matrix.get(i).get(leafNodes.get(j)));
+      for (int j = 0; j < n; j++) {
+        b.append('\t').append(cell(i, j));
       }
       b.append('\n');
     }
@@ -147,23 +205,11 @@ public class MyerMatrix {
     return (b.toString());
   }
 
-  /** Finds the best cell in a set (or creates a new empty cell) */
-  public Cell bestOf(Set<Cell> set) {
-    Cell currentBest = null;
-    for (Cell c : set) {
-      if (currentBest == null || c.betterThan(currentBest)) {
-        currentBest = c;
-      }
-    }
-    if (currentBest == null) {
-      return (new Cell());
-    }
-    return (currentBest);
-  }
-
-  /** returns the cell at a position*/
+  /** returns (a copy of) the cell at a position*/
   public Cell cell(int i, int j) {
-    return (matrix.get(i).get(leafNodes.get(j)));
+    Cell c = new Cell();
+    c.load(i, j, i * n + j);
+    return (c);
   }
 
   /** Represents a cell in the Matrix */
@@ -193,6 +239,34 @@ public class MyerMatrix {
     /** Number of special characters matched*/
     public int numMatchedSpecialCharacters;
 
+    /** Read the values from the arrays */
+    private void load(int i, int j, int cell) {
+      set(i, j, MyerMatrix.this.previousI[cell], MyerMatrix.this.previousJ[cell], MyerMatrix.this.skips[cell],
+          MyerMatrix.this.numMatchedCharacters[cell], MyerMatrix.this.numMatchedSpecialCharacters[cell]);
+      score = MyerMatrix.this.score[cell];
+    }
+
+    private void set(int i, int j, int previousI, int previousJ, int skips, int numMatchedCharacters, int numMatchedSpecialCharacters) {
+      this.i = i;
+      this.j = j;
+      this.previousI = previousI;
+      this.previousJ = previousJ;
+      this.skips = skips;
+      this.numMatchedCharacters = numMatchedCharacters;
+      this.numMatchedSpecialCharacters = numMatchedSpecialCharacters;
+      this.score = 0;
+    }
+
+    /** Write the values to the arrays */
+    private void store(int cell) {
+      MyerMatrix.this.score[cell] = score;
+      MyerMatrix.this.skips[cell] = skips;
+      MyerMatrix.this.numMatchedCharacters[cell] = numMatchedCharacters;
+      MyerMatrix.this.numMatchedSpecialCharacters[cell] = numMatchedSpecialCharacters;
+      MyerMatrix.this.previousI[cell] = previousI;
+      MyerMatrix.this.previousJ[cell] = previousJ;
+    }
+
     /** TRUE if I am better than c */
     public boolean betterThan(Cell c) {
       return (this.score > c.score);
@@ -0,0 +1,129 @@
+package fr.telecom_paristech.dbweb.regexrepair.simple;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.telecom_paristech.dbweb.regexrepair.simple.Regex.NodeType;
+
+/**
+ * Position automaton (Glushkov) of a regex tree: numbers the leaf nodes, and stores for every node the leaves that can come directly before
+ * it. Computed in two passes over the tree, instead of a recursion per call of {@link Regex#previous()}.
+ * Use {@link Regex#automaton()}, which caches the automaton until the tree is modified.
+ */
+public class PositionAutomaton {
+
+  /** Leaf nodes, in the order of {@link Regex#leafNodes()} */
+  private final List<Regex> leafNodes;
+
+  /** Index of the nodes */
+  private final Map<Regex, Integer> index = new IdentityHashMap<>();
+
+  /** Indices of the leaves that can precede a node, by index of the node */
+  private final List<int[]> previous = new ArrayList<>();
+
+  /** Leaves which can be at the end of each node */
+  private final Map<Regex, BitSet> last = new IdentityHashMap<>();
+
+  /** Nodes which can match the empty string */
+  private final Set<Regex> nullable = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /** Build the automaton of a regex tree */
+  public PositionAutomaton(Regex root) {
+    leafNodes = root.leafNodes();
+    Map<Regex, Integer> leafIndex = new IdentityHashMap<>();
+    for (int j = 0; j < leafNodes.size(); j++) {
+      leafIndex.put(leafNodes.get(j), j);
+    }
+    last(root, leafIndex);
+    before(root, new BitSet());
+    last.clear();
+    nullable.clear();
+  }
+
+  /** Computes the leaves which can be at the end of each node, and whether the node can be empty */
+  private void last(Regex node, Map<Regex, Integer> leafIndex) {
+    BitSet result = new BitSet();
+    last.put(node, result);
+    if (node.children == null) {
+      Integer j = leafIndex.get(node);
+      if (j == null) {
+        nullable.add(node);
+      } else {
+        result.set(j);
+      }
+      return;
+    }
+    boolean canBeEmpty = node.type != NodeType.DISJUNCTION || node.children.isEmpty();
+    for (Regex child : node.children) {
+      last(child, leafIndex);
+      switch (node.type) {
+        case DISJUNCTION:
+          canBeEmpty |= nullable.contains(child);
+          break;
+        case KLEENESTAR:
+          break;
+        default:
+          // concatenation
+          if (!nullable.contains(child)) {
+            result.clear();
+            canBeEmpty = false;
+          }
+      }
+      result.or(last.get(child));
+    }
+    if (canBeEmpty) {
+      nullable.add(node);
+    }
+  }
+
+  /** Computes the leaves which can come before each node, given the leaves which can come before the node */
+  private void before(Regex node, BitSet before) {
+    index.put(node, previous.size());
+    previous.add(before.stream().toArray());
+    if (node.children == null) {
+      return;
+    }
+    BitSet tail = before;
+    for (Regex child : node.children) {
+      switch (node.type) {
+        case DISJUNCTION:
+          before(child, before);
+          break;
+        case KLEENESTAR:
+          BitSet loop = (BitSet) before.clone();
+          loop.or(last.get(child));
+          before(child, loop);
+          break;
+        default:
+          // concatenation: the last leaves of the previous child, and if it can be empty, what came before it
+          before(child, tail);
+          BitSet next = (BitSet) last.get(child).clone();
+          if (nullable.contains(child)) {
+            next.or(tail);
+          }
+          tail = next;
+      }
+    }
+  }
+
+  /** Leaf nodes, in the order of {@link Regex#leafNodes()} */
+  public List<Regex> leafNodes() {
+    return leafNodes;
+  }
+
+  /** Leaf with the given index */
+  public Regex leaf(int j) {
+    return leafNodes.get(j);
+  }
+
+  /** Indices of the leaves that can come directly before the node, or null if the node is not part of the tree */
+  public int[] previous(Regex node) {
+    Integer i = index.get(node);
+    return i == null ? null : previous.get(i);
+  }
+}
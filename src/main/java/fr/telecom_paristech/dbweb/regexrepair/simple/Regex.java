@@ -9,6 +9,9 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate.Flavor;
+
 /**
  * Represents a regular expression.
  * 
@@ -42,63 +45,54 @@ public class Regex {
   /** j-index in the Meyer Matrix. Used exclusively there.*/
   public int jIndex;
 
-  /** Returns the set of predecessors */
+  /** Position automaton of the tree, if this is the root. Reset when the tree is modified. */
+  private PositionAutomaton automaton;
+
+  /** Compiled value of a character range */
+  private CharPredicate predicate;
+
+  /** Punctuation characters, see {@link #isSpecialChar()} */
+  private static final CharPredicate PUNCT = CharPredicate.compile("\\p{Punct}", Flavor.JAVA);
+
+  /** Returns the set of predecessors (leaf nodes that can come directly before this node) */
   public Set<Regex> previous() {
-    try {
-      HashSet<Regex> result = new HashSet<>();
-      parent.previousOfChild(childNumber, result);
-      result.removeIf(r -> r == null || (r.children != null && r.children.size() > 0));
-      return (result);
-    } catch (Exception | StackOverflowError e) {
-      Regex root = this;
-      System.err.println("some problem in regex: previous() called on ");
-      while (true) {
-        System.err.println(root.toPrettyString() + " childNumber " + root.childNumber);
-        if (root.parent == null || root.parent == root) {
-          break;
-        }
-        root = root.parent;
+    HashSet<Regex> result = new HashSet<>();
+    PositionAutomaton a = automaton();
+    int[] previous = a.previous(this);
+    if (previous != null) {
+      for (int j : previous) {
+        result.add(a.leaf(j));
       }
-      e.printStackTrace();
     }
-    return null;
+    return (result);
   }
 
-  /** Returns the set of predecessors of the ith child */
-  protected void previousOfChild(int i, Set<Regex> result) {
-    if (value != null) {
-      return;
-    }
-    Regex c = children.get(i);
-    if (result.contains(c)) {
-      return;
+  /** Returns the root of the tree */
+  public Regex root() {
+    Regex root = this;
+    while (root.parent != null && root.parent != root) {
+      root = root.parent;
     }
-    if (c.type == NodeType.KLEENESTAR) {
-      result.add(c);
+    return (root);
+  }
+
+  /**
+   * Returns the position automaton of the whole tree, computed once until the tree is modified.
+   * Call {@link #setParentPointers()} after modifying the children directly.
+   */
+  public PositionAutomaton automaton() {
+    Regex root = root();
+    if (root.automaton == null) {
+      root.automaton = new PositionAutomaton(root);
     }
-    switch (type) {
-      case CONCATENATION:
-        if (i > 0) {
-          children.get(i - 1).exitLeafNodes(result);
-        } else if (parent != null) {
-          parent.previousOfChild(childNumber, result);
-        }
-        break;
-      case DISJUNCTION:
-        parent.previousOfChild(childNumber, result);
-        break;
-      case KLEENESTAR:
-        parent.previousOfChild(childNumber, result);
-        children.get(0).exitLeafNodes(result);
-        break;
-      case CHARACTER:
-      case CHARACTERRANGE:
-        throw new RuntimeException("Cannot determine predecessor of i-th child for a character node " + this);
-      case EMPTY:
-        parent.previousOfChild(childNumber, result);
-        break;
+    return (root.automaton);
+  }
+
+  /** Resets the position automaton of the tree */
+  protected void invalidate() {
+    for (Regex r = this; r != null; r = r.parent == r ? null : r.parent) {
+      r.automaton = null;
     }
-    ;
   }
 
   /** All nodes contained in this regex (including this node) */
@@ -121,36 +115,6 @@ public class Regex {
     }
   }
 
-  /** Returns the final leaf nodes of this node */
-  protected void exitLeafNodes(Set<Regex> result) {
-    switch (type) {
-      case CONCATENATION:
-        children.get(children.size() - 1).exitLeafNodes(result);
-        return;
-      case DISJUNCTION:
-        for (Regex child : children) {
-          child.exitLeafNodes(result);
-        }
-        return;
-      case KLEENESTAR:
-        children.get(0).exitLeafNodes(result);
-        parent.previousOfChild(childNumber, result);
-        return;
-      case CHARACTER:
-      case CHARACTERRANGE:
-        result.add(this);
-        return;
-      case EMPTY:
-        if (value != null) {
-          return;
-        }
-        value = "No recursion";
-        result.addAll(parent.previous());
-        value = null;
-        return;
-    }
-  }
-
   /** Constructs a regex of a certain type*/
   public Regex(NodeType c) {
     type = c;
@@ -205,6 +169,13 @@ public class Regex {
 
   /** Adjusts parent pointers */
   protected void simplify() {
+    invalidate();
+    simplifyTree();
+  }
+
+  /** Adjusts parent pointers of this subtree */
+  private void simplifyTree() {
+    automaton = null;
     if (type == NodeType.CONCATENATION && children.isEmpty()) {
       type = NodeType.EMPTY;
       value = null;
@@ -227,13 +198,20 @@ public class Regex {
         }
         child.childNumber = i;
         child.parent = this;
-        child.simplify();
+        child.simplifyTree();
       }
     }
   }
 
   /** Adjusts parent pointers */
   protected void setParentPointers() {
+    invalidate();
+    setParentPointersOfTree();
+  }
+
+  /** Adjusts parent pointers of this subtree */
+  private void setParentPointersOfTree() {
+    automaton = null;
     if (type == NodeType.CONCATENATION && children.isEmpty()) {
       type = NodeType.EMPTY;
       value = null;
@@ -244,7 +222,7 @@ public class Regex {
         Regex child = children.get(i);
         child.childNumber = i;
         child.parent = this;
-        child.setParentPointers();
+        child.setParentPointersOfTree();
       }
     }
   }
@@ -507,12 +485,20 @@ public class Regex {
         if (c == 0x27E6 || c == 0x27E7) {
           return (false);
         }
-        return ((c + "").matches(value));
+        return (predicate().matches(c));
       default:
         return (false);
     }
   }
 
+  /** Returns the compiled value of a character range, compiled again if the value changed */
+  protected CharPredicate predicate() {
+    if (predicate == null || !predicate.toString().equals(value)) {
+      predicate = CharPredicate.compile(value, Flavor.JAVA);
+    }
+    return (predicate);
+  }
+
   /** Returns a pretty string*/
   public String toPrettyString() {
     return (new CountedRegex(this, null).toString());
@@ -555,7 +541,7 @@ public class Regex {
   public boolean isSpecialChar() {
     switch (type) {
       case CHARACTER:
-        return (value.matches("\\p{Punct}"));
+        return (value.length() == 1 && PUNCT.matches(value.charAt(0)));
       default:
         return false;
     }
@@ -13,6 +13,54 @@ import fr.telecom_paristech.dbweb.regexrepair.simple.Regex.NodeType;
 /** Repairs a regex.*/
 public class Repair {
 
+  /**
+   * Adds several words to a regex, one after the other. The result is the same as calling {@link Repair#add(String, String)} for each word
+   * and continuing with the pretty string of the result, but the regex is only parsed and printed again if a word modified it.
+   */
+  public static class Batch {
+
+    /** Current regex */
+    private String regex;
+
+    /** Current regex, parsed and with markers */
+    private Regex marked;
+
+    /** Whether printing the parsed regex gives the regex again (null if unknown) */
+    private Boolean fixpoint;
+
+    public Batch(String regex) {
+      this.regex = regex;
+    }
+
+    /** Adds a word. Modifies this instance! */
+    public Batch add(String word) {
+      if (marked == null) {
+        marked = mark(regex);
+      }
+      boolean modified = Repair.add(word, marked, regex, null);
+      if (!modified && Boolean.TRUE.equals(fixpoint)) {
+        return this;
+      }
+      String result = unmark(modified ? marked : marked.copy()).toPrettyString();
+      if (!modified) {
+        fixpoint = result.equals(regex);
+        if (fixpoint) {
+          return this;
+        }
+      }
+      regex = result;
+      marked = null;
+      fixpoint = null;
+      return this;
+    }
+
+    /** Returns the current regex */
+    @Override
+    public String toString() {
+      return regex;
+    }
+  }
+
   /** Prepares  a regex for the Feedback function*/
   protected static String toString(Regex regex) {
     String s = regex.toString();
@@ -29,8 +77,28 @@ public class Repair {
   }
   /** Repairs a regex.*/
   public static Regex add(String word, String regexAsString, Visualization vis) {
+    Regex regex = mark(regexAsString);
+    add(word, regex, regexAsString, vis);
+    return (unmark(regex));
+  }
+
+  /** Parses a regex, and surrounds it with the special markers */
+  protected static Regex mark(String regexAsString) {
+    return (new Regex("\u27E6(" + regexAsString + ")\u27E7"));
+  }
+
+  /** Removes the special markers */
+  protected static Regex unmark(Regex regex) {
+    regex.children.remove(0);
+    regex.children.remove(regex.children.size() - 1);
+    regex.setParentPointers();
+    return (regex);
+  }
+
+  /** Repairs a regex with markers (see {@link #mark(String)}). Returns false if the regex was not modified. */
+  protected static boolean add(String word, Regex regex, String regexAsString, Visualization vis) {
     word = "\u27E6" + word + "\u27E7";
-    Regex regex = new Regex("\u27E6(" + regexAsString + ")\u27E7");
+    boolean modified = false;
     MyerMatrix m = new MyerMatrix(word, regex, new UpdateFunction());
     List<Regex> matching = m.matching();
     if (vis != null) {
@@ -101,8 +169,10 @@ public class Repair {
           j = k;
           // See whether we already added the same thing
           Regex disjunction = left2right2disjunction.getOrDefault(matching.get(i), Collections.emptyMap()).get(matching.get(j));
+          modified = true;
           if (disjunction != null) {
             disjunction.children.add(Regex.quoted(word.substring(i + 1, j)));
+            disjunction.setParentPointers();
           } else {
             //disjunction = leftParents.get(LCA + 1).makeChildrenOptionalAndAdd(leftParents.get(LCA + 1).childNumber + 1,
             //    leftParents.get(LCA + 1).childNumber + 1, Regex.quoted(word.substring(i + 1, j)));
@@ -128,6 +198,7 @@ public class Repair {
       Regex addMe = Regex.quoted(word.substring(i + 1, j));
 
       // Make everything optional on the left
+      modified = true;
       for (int k = LCA + 1; k < leftParents.size() - 1; k++) {
         if (leftParents.get(k).type != NodeType.CONCATENATION) {
           continue;
@@ -155,17 +226,13 @@ public class Repair {
     // visualize simplification
     if (vis != null) {
       regex.simplify();
+      modified = true;
       Map<Regex, CountedRegex> oldToNew = new HashMap<>();
       CountedRegex cr = new CountedRegex(regex, oldToNew);
       String str = cr.toString();
       vis.step(str.substring(1, str.length() - 1), "simplified regex");
     }
-
-    // Remove the dollar signs
-    regex.children.remove(0);
-    regex.children.remove(regex.children.size() - 1);
-    regex.setParentPointers();
-    return (regex);
+    return (modified);
   }
 
   public static void main(String[] args) {
@@ -7,7 +7,6 @@ import fr.telecom_paristech.dbweb.regexrepair.helper.Tools;
 import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
 import fr.telecom_paristech.dbweb.regexrepair.iface.RegexRepairer;
 import fr.telecom_paristech.dbweb.regexrepair.iface.TimedResult;
-import fr.telecom_paristech.dbweb.regexrepair.simple.Regex;
 import fr.telecom_paristech.dbweb.regexrepair.simple.Repair;
 
 /**
@@ -19,12 +18,10 @@ public class SimpleRepairer implements RegexRepairer {
   @Override
   public TimedResult timedRepair(String regex, List<String> toaddList, Feedback feedback) {
     TimedResult r = new TimedResult();
-    r.expr = regex;
+    Repair.Batch batch = new Repair.Batch(regex);
     for (String str : toaddList) {
       try {
-        Regex expr = Repair.add(str, r.expr);
-        String rep = expr.toPrettyString();
-        r.expr = rep;
+        batch.add(str);
       } catch (Exception e) {
         System.err.println("problem with regex " + Tools.asJavaString(regex) + ", word " + Tools.asJavaString(str));
         if (e instanceof PatternSyntaxException) {
@@ -33,6 +30,7 @@ public class SimpleRepairer implements RegexRepairer {
         throw e;
       }
     }
+    r.expr = batch.toString();
     if (feedback == null || feedback.allow(r.expr)) {
     } else {
       r.expr = RegexRepairer.altBaseline(regex, toaddList);
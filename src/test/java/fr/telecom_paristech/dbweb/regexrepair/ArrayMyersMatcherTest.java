@@ -0,0 +1,239 @@
+package fr.telecom_paristech.dbweb.regexrepair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.EmbedInConc;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Matching;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.CompiledMatcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.Matcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.myers.ArrayMyersMatcher;
+import fr.telecom_paristech.dbweb.regexrepair.matcher.myers.MyersMatcher;
+
+/** Compare the matchings of the array based implementation with the original one */
+public class ArrayMyersMatcherTest {
+
+  /** Regexes of the repair tests */
+  static final List<String> REGEXES = Arrays.asList("(http.//)?(\\w+.)\\w+", "Ab", "abcdef", "a{2}", "\\d{3}", "(ab){2}", "(abc){3}",
+      "(abc)*", "(abcd)*", "[ ]{1,2}(1\\d{2}|)", " {1,2}", "(|1)(3)\\d(|\\(|\\))", "k(a|b)", "a(bc|)d", "(ab*c)+", "(a+b)+",
+      "(emse|eater|Th){2}", "(|a )\\d", "\\d{1} ", "(\\da){2}", "(\\d{2}){2}", "\\d{2}a\\d{2}b\\d{3}", "\\d{3} \\d{3}-\\d{4}",
+      "34\\d{13}", "[A-Za-z]{3} 1", "(a+ ){2}b", "a(|a{5}|a{7}|a{13})", "h?", "(.\\d{2})?", "\\s+\\w+", "\\w+.\\w+", ".(-)+e",
+      "(a|i)+", "(a|b)((c|d)(e|f))*", "(/a+)*", "[A]{1,3}", "[A-Z][A-Za-z{\'}]*,( [A-Z][A-Za-z]){1,2}", "a{4}[|-]a{2}",
+      "(.*a){2}", "(.|-)", "\\d+ [mcd]?m", "<h1>.*</h1>", "(http.//)?(\\w+\\.)+\\w+\\.\\w+(/\\S*)?", "(a|aa)+", "(a|a?)+",
+      "a{0,3}b{2,}");
+
+  /** Words of the repair tests */
+  static final List<String> WORDS = Arrays.asList("", "a", "ftp://a", "https://b", "Aba", "abef", "aba", "123", "(234", "abcac-abc",
+      "abbc", "aacccca", " A1", "  A", "11-", "kca", "b0c", "aaca", "baba", "Theaters", "ab 1", "Abc 2", "a12x34x567", " 123-456-abc",
+      "370000000000002", "AB    1", "aa aa aa b", "aaaaaaaaaaaaaaaaaaa", "hw", " 2.0", " a 1.2", ".c#e#", ";-;-;e", "#a?i", "b-c",
+      "/A/0i/a", "AuA", "Aaaaa, Aaaaaaa A", "aaa-aaaaa", "a!", "42 km", "<h2>abc</h2>", "http://www.corporate", "aaaaaaaa!");
+
+  static void check(Matcher expected, Matcher actual, String regex, String word) {
+    Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+    check(expected.match(e, word), actual.match(e, word), regex, word);
+  }
+
+  static void check(Matching m1, Matching m2, String regex, String word) {
+    assertEquals(m1.str, m2.str);
+    assertEquals("size for " + regex + " / " + word, m1.matches.size(), m2.matches.size());
+    for (int i = 0; i < m1.matches.size(); i++) {
+      assertSame("char " + i + " for " + regex + " / " + word, m1.matches.get(i), m2.matches.get(i));
+    }
+  }
+
+  @Test
+  public void testRepairCorpus() {
+    Matcher expected = new MyersMatcher(), actual = new ArrayMyersMatcher();
+    for (String regex : REGEXES) {
+      for (String word : WORDS) {
+        check(expected, actual, regex, word);
+      }
+    }
+  }
+
+  @Test
+  public void testRandomWords() {
+    Matcher expected = new MyersMatcher(), actual = new ArrayMyersMatcher();
+    Random r = new Random(42);
+    String alphabet = "abcdAB01 -.";
+    for (String regex : REGEXES) {
+      List<String> words = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = r.nextInt(12); j > 0; j--) {
+          sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        }
+        words.add(sb.toString());
+      }
+      for (String word : words) {
+        check(expected, actual, regex, word);
+      }
+    }
+  }
+
+  @Test
+  public void testCompiled() {
+    for (Matcher matcher : Arrays.asList(new MyersMatcher(), new ArrayMyersMatcher())) {
+      for (String regex : REGEXES) {
+        Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+        CompiledMatcher compiled = matcher.compile(e);
+        for (String word : WORDS) {
+          check(matcher.match(e, word), compiled.match(word), regex, word);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBounded() {
+    // same matching as without bound, and the same decision whether the bound is exceeded
+    Matcher expected = new MyersMatcher(), actual = new ArrayMyersMatcher();
+    for (String regex : REGEXES) {
+      Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+      CompiledMatcher compiledExpected = expected.compile(e), compiledActual = actual.compile(e);
+      for (String word : WORDS) {
+        for (int maxCost : new int[] { 0, 1, 3, 8, 20, 1000 }) {
+          Matching m1 = compiledExpected.match(word, maxCost), m2 = compiledActual.match(word, maxCost);
+          check(m1, m2, regex, word);
+          assertEquals("bound " + maxCost + " for " + regex + " / " + word, m1.boundExceeded, m2.boundExceeded);
+        }
+      }
+    }
+    assertEquals(false, actual.match(RegexParser.parse("\\d{3}"), "123", 0).boundExceeded);
+    assertEquals(true, actual.match(RegexParser.parse("\\d{3}"), "12", 0).boundExceeded);
+  }
+
+  @Test
+  public void testFolded() {
+    // fold all quantifiers with more than 4 states
+    Matcher expected = new MyersMatcher().unfolding(4), actual = new ArrayMyersMatcher().unfolding(4);
+    for (String regex : REGEXES) {
+      for (String word : WORDS) {
+        check(expected, actual, regex, word);
+      }
+    }
+    // large quantifiers
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append(i % 10);
+    }
+    for (String regex : Arrays.asList("\\d{1,5000}", "(\\d{1,10}-?){1,500}")) {
+      Matching m = actual.match(RegexParser.parse(regex), sb.toString());
+      assertEquals(-1, m.matches.indexOf(null));
+      check(expected, actual, regex, sb.toString());
+    }
+  }
+
+  @Test
+  public void testLinearSpace() {
+    Matcher expected = new MyersMatcher(), actual = new ArrayMyersMatcher().linearSpace(0);
+    for (String regex : REGEXES) {
+      for (String word : WORDS) {
+        check(expected, actual, regex, word);
+      }
+    }
+    // words with more rows than a block
+    Random r = new Random(42);
+    String alphabet = "abcdAB01 -.";
+    for (String regex : REGEXES) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 50 + r.nextInt(300); j > 0; j--) {
+        sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+      }
+      check(expected, actual, regex, sb.toString());
+    }
+  }
+
+  @Test
+  public void testBoundedLinearSpace() {
+    // bounded matches of big tables use linear space, with the same matching and the same decision
+    Matcher expected = new MyersMatcher(), actual = new ArrayMyersMatcher().linearSpace(0);
+    Random r = new Random(42);
+    String alphabet = "abcdAB01 -.";
+    for (String regex : REGEXES) {
+      Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+      CompiledMatcher compiledExpected = expected.compile(e), compiledActual = actual.compile(e);
+      List<String> words = new ArrayList<>(WORDS);
+      StringBuilder sb = new StringBuilder();
+      for (int j = 50 + r.nextInt(300); j > 0; j--) {
+        sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+      }
+      words.add(sb.toString());
+      for (String word : words) {
+        for (int maxCost : new int[] { 0, 3, 20, 1000 }) {
+          Matching m1 = compiledExpected.match(word, maxCost), m2 = compiledActual.match(word, maxCost);
+          check(m1, m2, regex, word);
+          assertEquals("bound " + maxCost + " for " + regex + " / " + word, m1.boundExceeded, m2.boundExceeded);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTooBig() {
+    // the full tables of 120001 rows with more than 20000 states don't fit into an array, so they always use linear space
+    StringBuilder regex = new StringBuilder(), word = new StringBuilder();
+    for (int i = 0; i < 120000; i++) {
+      word.append('a');
+      if (i < 20000) {
+        regex.append('a');
+      }
+    }
+    Expr e = RegexParser.parse(regex.toString());
+    assertEquals(true, ((ArrayMyersMatcher) new ArrayMyersMatcher().compile(e)).usesLinearSpace(word.toString()));
+    assertEquals(true, ((ArrayMyersMatcher) new ArrayMyersMatcher().linearSpace(Integer.MAX_VALUE).compile(e)).usesLinearSpace(word.toString()));
+  }
+
+  @Test
+  public void testLinearSpaceDefault() {
+    // tables that are not kept by the thread use linear space, with the same matching
+    Expr e = RegexParser.parse("(http.//)?(\\w+\\.)+\\w+\\.\\w+(/\\S*)?");
+    ArrayMyersMatcher full = (ArrayMyersMatcher) new ArrayMyersMatcher().linearSpace(Integer.MAX_VALUE).compile(e);
+    ArrayMyersMatcher linear = (ArrayMyersMatcher) new ArrayMyersMatcher().compile(e);
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 5000) {
+      sb.append("http://www.example.org/").append(sb.length()).append(" ");
+    }
+    String word = sb.toString();
+    assertEquals(false, linear.usesLinearSpace("http://example.org"));
+    assertEquals(true, linear.usesLinearSpace(word));
+    assertEquals(full.match(word).matches, linear.match(word).matches);
+    for (int maxCost : new int[] { 0, 100, 100000 }) {
+      Matching m1 = full.match(word, maxCost), m2 = linear.match(word, maxCost);
+      assertEquals(m1.matches, m2.matches);
+      assertEquals(m1.boundExceeded, m2.boundExceeded);
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    // several threads share one compiled matcher
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    for (Matcher matcher : Arrays.asList(new MyersMatcher(), new ArrayMyersMatcher())) {
+      for (String regex : REGEXES) {
+        Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+        CompiledMatcher compiled = matcher.compile(e);
+        List<Future<Matching>> futures = new ArrayList<>();
+        for (String word : WORDS) {
+          futures.add(pool.submit(() -> compiled.match(word)));
+        }
+        for (int i = 0; i < WORDS.size(); i++) {
+          check(matcher.match(e, WORDS.get(i)), futures.get(i).get(), regex, WORDS.get(i));
+        }
+      }
+    }
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,99 @@
+package fr.telecom_paristech.dbweb.regexrepair;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.AdaptiveRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.iface.CachingFeedback;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
+
+public class CachingFeedbackTest {
+
+  /** Allows regexes without 'x', and records the calls */
+  static class RecordingFeedback implements Feedback {
+
+    List<String> calls = new ArrayList<>();
+
+    @Override
+    public boolean allow(String regex) {
+      calls.add(regex);
+      return !regex.contains("x");
+    }
+  }
+
+  @Test
+  public void testLru() {
+    RecordingFeedback f = new RecordingFeedback();
+    CachingFeedback c = new CachingFeedback(f, 2);
+    assertEquals(true, c.allow("a"));
+    assertEquals(false, c.allow("x"));
+    assertEquals(true, c.allow("a"));
+    assertEquals(true, c.allow("b")); // evicts x
+    assertEquals(false, c.allow("x"));
+    assertEquals(Arrays.asList("a", "x", "b", "x"), f.calls);
+    assertEquals(5, c.count());
+    assertEquals(1, c.hits());
+    assertEquals(4, c.misses());
+    assertEquals(2, c.evictions());
+    assertEquals(2, c.size());
+  }
+
+  @Test
+  public void testKeys() {
+    // different regexes have different entries
+    RecordingFeedback f = new RecordingFeedback();
+    CachingFeedback c = new CachingFeedback(f, 10);
+    assertEquals(true, c.allow("a"));
+    assertEquals(true, c.allow(" a "));
+    assertEquals(true, c.allow(" {1,2}"));
+    assertEquals(false, c.allow("{1,2}x"));
+    assertEquals(Arrays.asList("a", " a ", " {1,2}", "{1,2}x"), f.calls);
+    assertEquals(4, c.size());
+
+    // equivalent regexes can share an entry
+    f = new RecordingFeedback();
+    c = new CachingFeedback(f, 10, r -> RegexParser.parse(r).toRegexString());
+    assertEquals(true, c.allow("(a)"));
+    assertEquals(true, c.allow("a"));
+    assertEquals(true, c.allow(" a "));
+    assertEquals(Arrays.asList("(a)", " a "), f.calls);
+  }
+
+  @Test
+  public void testRepair() {
+    // same result, fewer calls
+    RecordingFeedback f1 = new RecordingFeedback(), f2 = new RecordingFeedback();
+    CachingFeedback c = new CachingFeedback(f2, 1000);
+    List<String> toadd = Arrays.asList("axc", "ayc", "abx", "xbc");
+    assertEquals(new AdaptiveRepairer().repair("abc", toadd, f1), new AdaptiveRepairer().repair("abc", toadd, c));
+    assertEquals(f1.calls.size(), c.count());
+    assertEquals(c.misses(), f2.calls.size());
+  }
+
+  @Test
+  public void testPersistence() throws IOException {
+    Path file = Files.createTempFile("feedback", ".json");
+    Files.delete(file);
+    RecordingFeedback f = new RecordingFeedback();
+    CachingFeedback c = new CachingFeedback(f, 10).load(file);
+    c.allow("a");
+    c.allow("x");
+    c.save(file);
+
+    CachingFeedback c2 = new CachingFeedback(f, 10).load(file);
+    assertEquals(true, c2.allow("a"));
+    assertEquals(false, c2.allow("x"));
+    assertEquals(2, c2.hits());
+    assertEquals(2, f.calls.size());
+    Files.delete(file);
+  }
+}
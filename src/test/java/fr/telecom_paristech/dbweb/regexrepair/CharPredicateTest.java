@@ -0,0 +1,53 @@
+package fr.telecom_paristech.dbweb.regexrepair;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate;
+import fr.telecom_paristech.dbweb.regexrepair.helper.CharPredicate.Flavor;
+
+/** Compare compiled char predicates with the regex engines */
+public class CharPredicateTest {
+
+  /** Leaves, and some regexes that need the regex engine */
+  static final List<String> LEAVES = Arrays.asList("a", "A", " ", "-", "/", "\\.", "\\(", "\\)", "\\\\", "\\-", "\\d", "\\w", "\\s", "\\D",
+      "\\W", "\\S", "\\t", "\\n", "\\v", ".", "[A-Za-z]", "[A-Za-z{\'}]", "[|-]", "[mcd]", "[ ]", "[A]", "[^a-c]", "[\\d_]", "[^\\\"]",
+      "[-a]", "[a-c-e]", "[\\w.]", "[^\\D]", "[\u00e9-\u00fc]", "\u00e9", "\\p{L}", "\\x41", "ab", "a*", "\\b");
+
+  /** Check all characters of the first unicode blocks, and some line separators */
+  static void check(String regex, Flavor flavor) {
+    CharPredicate p = CharPredicate.compile(regex, flavor);
+    String chars = "\u0085\u2028\u2029\uffff";
+    for (char c = 0; c < 0x800; c++) {
+      chars += c;
+    }
+    for (char c : chars.toCharArray()) {
+      boolean expected;
+      if (flavor == Flavor.RE2J) {
+        expected = com.google.re2j.Pattern.compile(regex).matches(String.valueOf(c));
+      } else {
+        expected = java.util.regex.Pattern.compile(regex).matcher(String.valueOf(c)).matches();
+      }
+      assertEquals(regex + " for char " + (int) c, expected, p.matches(c));
+    }
+  }
+
+  @Test
+  public void testRe2j() {
+    for (String regex : LEAVES) {
+      check(regex, Flavor.RE2J);
+    }
+  }
+
+  @Test
+  public void testJava() {
+    for (String regex : LEAVES) {
+      check(regex, Flavor.JAVA);
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+package fr.telecom_paristech.dbweb.regexrepair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.AdaptiveRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.iface.CorpusFeedback;
+
+public class CorpusFeedbackTest {
+
+  private static Path write(String... lines) throws IOException {
+    return write(StandardCharsets.UTF_8, lines);
+  }
+
+  private static Path write(Charset charset, String... lines) throws IOException {
+    Path file = Files.createTempFile("corpus", ".txt");
+    Files.write(file, String.join("\r\n", lines).getBytes(charset));
+    return file;
+  }
+
+  @Test
+  public void testRatio() throws IOException {
+    Path pos = write("abc", "abd", "xyz"), neg = write("a1", "a2", "b3", "", "é");
+    CorpusFeedback f = new CorpusFeedback(pos, neg);
+    assertEquals(3, f.positiveCount());
+    assertEquals(5, f.negativeCount());
+    assertEquals(true, f.allow("ab[cd]"));
+    assertEquals(false, f.allow("a."));
+    assertEquals(false, f.allow(".*"));
+    assertEquals(false, f.allow(""));
+    assertEquals(false, f.allow("é"));
+    assertEquals(false, f.allow("(")); // invalid regex
+
+    f.maxNegativeRatio(0.4);
+    assertEquals(true, f.allow("a."));
+    assertEquals(false, f.allow("[ab]."));
+
+    f.minPositiveRatio(0.5);
+    assertEquals(true, f.allow("ab[cd]"));
+    assertEquals(false, f.allow("abc"));
+    assertEquals(10, f.count());
+    Files.delete(pos);
+    Files.delete(neg);
+  }
+
+  @Test
+  public void testCharset() throws IOException {
+    Path utf8 = write("é", "aé", "€uro", "x"), latin1 = write(StandardCharsets.ISO_8859_1, "é", "aé", "x");
+    // a multi-byte character is one char
+    CorpusFeedback f = new CorpusFeedback(utf8).maxNegativeRatio(0.25);
+    assertEquals(false, f.allow("a?."));
+    assertEquals(true, f.allow("a.."));
+    assertEquals(true, f.allow("aé"));
+    assertEquals(false, f.allow("[aé€]?.(uro)?"));
+    assertEquals(true, f.allow("€."));
+
+    f = new CorpusFeedback(null, latin1, StandardCharsets.ISO_8859_1).maxNegativeRatio(0.4);
+    assertEquals(true, f.allow("é"));
+    assertEquals(false, f.allow("a?é"));
+    try {
+      new CorpusFeedback(latin1);
+      fail("ISO-8859-1 file decoded as UTF-8");
+    } catch (IOException e) {
+    }
+    // the lines of UTF-16 are not separated by the byte '\n'
+    Path utf16 = write(StandardCharsets.UTF_16, "a", "b");
+    try {
+      new CorpusFeedback(null, utf16, StandardCharsets.UTF_16);
+      fail("UTF-16 accepted");
+    } catch (IllegalArgumentException e) {
+    }
+    Files.delete(utf16);
+    Files.delete(utf8);
+    Files.delete(latin1);
+  }
+
+  @Test
+  public void testSampling() throws IOException {
+    String[] lines = new String[10000];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = (i % 10 == 0 ? "x" : "y") + i;
+    }
+    Path neg = write(lines);
+    CorpusFeedback exact = new CorpusFeedback(neg).maxNegativeRatio(0.3);
+    CorpusFeedback sampling = new CorpusFeedback(neg).maxNegativeRatio(0.3).sampling(1e-6, 42);
+    for (String regex : Arrays.asList("x\\d+", "y\\d+", "[xy]\\d+", "z", "y\\d*[0-6]")) {
+      assertEquals(regex, exact.allow(regex), sampling.allow(regex));
+      assertEquals(regex, 1, sampling.lastSampled());
+      assertEquals(regex, true, sampling.lastScanned() < exact.lastScanned());
+    }
+    // exactly at the limit, so needs to scan everything
+    long before = sampling.scanned();
+    assertEquals(exact.allow("y\\d*[1-3]"), sampling.allow("y\\d*[1-3]"));
+    assertEquals(lines.length, sampling.scanned() - before);
+    assertEquals(lines.length, sampling.lastScanned());
+    assertEquals(0, sampling.lastSampled());
+    assertEquals(5, sampling.sampled());
+    assertEquals(true, sampling.scanned() < exact.scanned());
+    Files.delete(neg);
+  }
+
+  @Test
+  public void testRepair() throws IOException {
+    Path neg = write("http://example.org", "ftp://example.org");
+    CorpusFeedback f = new CorpusFeedback(neg);
+    String regex = new AdaptiveRepairer().repair("https://[a-z]+\\.com", Arrays.asList("https://abc.org"), f);
+    assertEquals(true, f.allow(regex));
+    assertEquals(true, com.google.re2j.Pattern.matches(regex, "https://abc.org"));
+    Files.delete(neg);
+  }
+}
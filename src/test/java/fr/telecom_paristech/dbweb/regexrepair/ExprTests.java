@@ -1,11 +1,23 @@
 package fr.telecom_paristech.dbweb.regexrepair;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.CharacterClass;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.ExprSnapshot;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Repeat;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Text;
 
 
 public class ExprTests {
@@ -35,4 +47,96 @@ public class ExprTests {
     checkStr("a(a*|bcd{2,3})", "a(a*|b(cd{2,3}))");
     checkStr("a|b|c|d", "a|b|(c|d)");
   }
+
+  @Test
+  public void testCachedRegexString() {
+    Expr e = RegexParser.parse("a(b|c)d{2}");
+    assertEquals("a(b|c)d{2}", e.toRegexString());
+
+    // modifications invalidate the strings of the ancestors
+    AggExpr alt = (AggExpr) e.leaves().get(1).getParent();
+    alt.addChild(new Text("e"));
+    assertEquals("a(b|c|e)d{2}", e.toRegexString());
+    Repeat r = (Repeat) e.leaves().get(4).getParent();
+    r.setMax(3);
+    assertEquals("a(b|c|e)d{2,3}", e.toRegexString());
+    alt.removeLastChild();
+    assertEquals("a(b|c)d{2,3}", e.toRegexString());
+
+    // a clone has no children yet
+    assertEquals("", alt.clone().toRegexString());
+    // the cached string is not used for marked strings
+    assertEquals(Expr.mark("a(b|c)d{2,3}"), e.toRegexString(e));
+  }
+
+  @Test
+  public void testStructuralEquals() {
+    Expr e1 = RegexParser.parse("a(b|c)*d{2}"), e2 = RegexParser.parse("a(b|c)*d{2}");
+    assertTrue(e1.structuralEquals(e2));
+    assertEquals(e1.structuralHash(), e2.structuralHash());
+    assertFalse(e1.structuralEquals(RegexParser.parse("a(b|c)*d{3}")));
+    assertFalse(e1.structuralEquals(RegexParser.parse("a(b|c)+d{2}")));
+    assertFalse(e1.structuralEquals(RegexParser.parse("a(b|d)*d{2}")));
+    assertFalse(new Text("\\d", false).structuralEquals(new CharacterClass("\\d")));
+
+    // the hash follows modifications
+    AggExpr alt = (AggExpr) e2.leaves().get(2).getParent();
+    alt.removeLastChild();
+    assertFalse(e1.structuralEquals(e2));
+    alt.addChild(new Text("c"));
+    assertTrue(e1.structuralEquals(e2));
+    assertEquals(e1.structuralHash(), e2.structuralHash());
+  }
+
+  @Test
+  public void testSnapshot() {
+    Expr e = RegexParser.parse("a(b|c)(d|e)f");
+    AggExpr alt1 = (AggExpr) e.leaves().get(1).getParent(), alt2 = (AggExpr) e.leaves().get(3).getParent();
+    ExprSnapshot s0 = new ExprSnapshot(e);
+    ExprSnapshot s1 = s0.addChild(alt1, new Conc());
+    ExprSnapshot s2 = s1.addChild(alt2, new Text("g"));
+    ExprSnapshot s3 = s1.addChild(alt1, new Text("h"));
+
+    // the snapshots coexist, and the original is unchanged
+    assertEquals("a(b|c)(d|e)f", s0.getRoot().toRegexString());
+    assertEquals("a(b|c|)(d|e)f", s1.getRoot().toRegexString());
+    assertEquals("a(b|c|)(d|e|g)f", s2.getRoot().toRegexString());
+    assertEquals("a(b|c||h)(d|e)f", s3.getRoot().toRegexString());
+    assertEquals("a(b|c)(d|e)f", e.toRegexString());
+
+    // only the path to the root is copied
+    assertSame(alt2, s1.get(alt2));
+    assertSame(e.leaves().get(0), ((AggExpr) s2.getRoot()).getChildren().get(0));
+    e.debug();
+
+    s2.apply();
+    assertEquals("a(b|c|)(d|e|g)f", e.toRegexString());
+    e.debug();
+  }
+
+  @Test
+  public void testSnapshotMany() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("(x|(y|z)").append(i).append(")");
+    }
+    // the same edits on a snapshot and on a live tree
+    Expr e = RegexParser.parse(sb.toString()), live = RegexParser.parse(sb.toString());
+    List<Expr> leaves = e.leaves(), liveLeaves = live.leaves();
+    Random random = new Random(42);
+    ExprSnapshot s = new ExprSnapshot(e);
+    for (int i = 0; i < 3000; i++) {
+      int leaf = random.nextInt(leaves.size());
+      String text = String.valueOf((char) ('A' + i % 26));
+      s = s.addChild((AggExpr) leaves.get(leaf).getParent(), new Text(text));
+      ((AggExpr) liveLeaves.get(leaf).getParent()).addChild(new Text(text));
+      if (i % 500 == 0) {
+        assertEquals(live.toRegexString(), s.getRoot().toRegexString());
+      }
+    }
+    assertEquals(live.toRegexString(), s.getRoot().toRegexString());
+    assertEquals(sb.toString(), e.toRegexString());
+    s.apply();
+    assertEquals(live.toRegexString(), e.toRegexString());
+  }
 }
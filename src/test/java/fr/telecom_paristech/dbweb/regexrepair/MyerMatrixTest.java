@@ -0,0 +1,81 @@
+package fr.telecom_paristech.dbweb.regexrepair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.telecom_paristech.dbweb.regexrepair.simple.MyerMatrix;
+import fr.telecom_paristech.dbweb.regexrepair.simple.Regex;
+import fr.telecom_paristech.dbweb.regexrepair.simple.Repair;
+import fr.telecom_paristech.dbweb.regexrepair.simple.UpdateFunction;
+
+public class MyerMatrixTest {
+
+  @Test
+  public void testMatching() {
+    MyerMatrix m = new MyerMatrix("$aa $", new Regex("$(a[a-z]* )*$"), new UpdateFunction());
+    assertEquals(m.leafNodes, m.matching());
+    assertEquals(5, m.cell(4, 4).numMatchedCharacters);
+    assertEquals(2, m.cell(4, 4).numMatchedSpecialCharacters);
+    assertEquals(3, m.cell(4, 4).predecessor().i);
+  }
+
+  @Test
+  public void testPrevious() {
+    Regex r = new Regex("$(a|b?)*c$");
+    List<Regex> l = r.leafNodes();
+    assertEquals(new HashSet<>(Arrays.asList(l.get(0), l.get(1), l.get(2))), l.get(1).previous());
+    assertEquals(new HashSet<>(Arrays.asList(l.get(0), l.get(1), l.get(2))), l.get(3).previous());
+    assertEquals(new HashSet<>(Arrays.asList(l.get(3))), l.get(4).previous());
+    assertSame(r.automaton(), l.get(2).automaton());
+
+    // modifications reset the automaton: $(a|b?)*(|x)c$
+    l.get(3).makeChildrenOptionalAndAdd(0, 0, Regex.quoted("x"));
+    Regex x = r.leafNodes().get(3);
+    assertEquals("x", x.value);
+    assertEquals(new HashSet<>(Arrays.asList(l.get(0), l.get(1), l.get(2))), x.previous());
+    assertEquals(new HashSet<>(Arrays.asList(l.get(0), l.get(1), l.get(2), x)), l.get(3).previous());
+  }
+
+  @Test
+  public void testMatchesChar() {
+    for (String value : Arrays.asList("[a-z]", "[^0-9\\-]", "\\d", "\\w", "\\S", ".", "[\u00e9-\u00fc ]")) {
+      Regex leaf = new Regex(value).leafNodes().get(0);
+      assertEquals(value, leaf.value);
+      for (char c = 0; c < 0x800; c++) {
+        assertEquals(value + " for char " + (int) c, String.valueOf(c).matches(value), leaf.matchesChar(c));
+      }
+    }
+    assertEquals(false, new Regex(".").leafNodes().get(0).matchesChar('\u27E6'));
+    assertEquals(true, new Regex("-").leafNodes().get(0).isSpecialChar());
+    assertEquals(false, new Regex("a").leafNodes().get(0).isSpecialChar());
+  }
+
+  @Test
+  public void testRepair() {
+    assertEquals("[0-9]+-[0-9]+a?", Repair.add("123-45a", "[0-9]+-[0-9]+").toPrettyString());
+    assertEquals("ab(-cd)?", Repair.add("ab-cd", "ab").toPrettyString());
+    assertEquals("\\(?[0-9]{3}\\)? [0-9]+", Repair.add("(123) 456", "[0-9]{3} [0-9]+").toPrettyString());
+  }
+
+  @Test
+  public void testBatch() {
+    List<List<String>> wordLists = Arrays.asList(Arrays.asList("123-45a", "123-45", "1-2a", "123-45b"),
+        Arrays.asList("ab", "ab-cd", "ab-cd", "ab-cd-ef", "ab"), Arrays.asList("(123) 456", "123 456", "(12) 3", "(123) 456"));
+    for (String regex : Arrays.asList("[0-9]+-[0-9]+", "ab", "[0-9]{3} [0-9]+")) {
+      for (List<String> words : wordLists) {
+        String expected = regex;
+        Repair.Batch batch = new Repair.Batch(regex);
+        for (String word : words) {
+          expected = Repair.add(word, expected).toPrettyString();
+          assertEquals(expected, batch.add(word).toString());
+        }
+      }
+    }
+  }
+}
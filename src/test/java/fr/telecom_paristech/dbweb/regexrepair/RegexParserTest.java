@@ -1,11 +1,24 @@
 package fr.telecom_paristech.dbweb.regexrepair;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.DirectRegexParser;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParseException;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Text;
 
 public class RegexParserTest {
 
@@ -26,4 +39,73 @@ public class RegexParserTest {
     check("a|b");
   }
 
+  /** Compare the direct parser with the grammar, on the regexes of the other tests */
+  @Test
+  public void testDirect() throws RegexParseException {
+    RegexParser antlr = new RegexParser().directParsing(false);
+    List<String> regexes = new ArrayList<>(ArrayMyersMatcherTest.REGEXES);
+    regexes.addAll(Arrays.asList("a(d|e)*f[g]{2,3}", "-|.", "[{]", "[^\"]", "a?b*c+e{2,3}f{4,}g{5}", "a|b|(c|d)", "((a))", "",
+        "((a)?)? (b{3}){4} (b{2,3}){4}", "(|abc(def)*) (ab||def)", "(|1)((||3)|)\\d((|(|\\)) )|0)", "a*?b++c{2}?(?:d|e)", "^a\\b$",
+        "a{2", "{}a,"));
+    for (String regex : regexes) {
+      Expr e = DirectRegexParser.parse(regex);
+      assertNotNull(regex, e);
+      assertTrue(regex, antlr.read(regex).structuralEquals(e));
+    }
+
+    // syntax that is left to the grammar
+    for (String regex : Arrays.asList("\\p{L}", "a(?=b)", "(a)\\1", "\\Qa.b\\E", "[[:alpha:]]", "a)")) {
+      assertNull(regex, DirectRegexParser.parse(regex));
+    }
+    regexes = new ArrayList<>(CharPredicateTest.LEAVES);
+    regexes.addAll(Arrays.asList("a(?=b)", "(a)\\1", "\\Qa.b\\E", "[[:alpha:]]", "a)"));
+    for (String regex : regexes) {
+      assertTrue(regex, antlr.read(regex).structuralEquals(RegexParser.parse(regex)));
+    }
+  }
+
+  @Test
+  public void testErrors() {
+    for (String regex : new String[] { "a(b", "[a", "a**", "\\" }) {
+      try {
+        new RegexParser().read(regex);
+        fail("parsed " + regex);
+      } catch (RegexParseException e) {
+        assertEquals(regex, e.getRegex());
+      }
+      try {
+        RegexParser.parse(regex);
+        fail("parsed " + regex);
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getCause() instanceof RegexParseException);
+      }
+    }
+
+    // the parser can be reused after an error
+    RegexParser p = new RegexParser();
+    try {
+      p.read("a(b");
+    } catch (RegexParseException e) {
+    }
+    try {
+      assertEquals("a(b|c)", p.read("a(b|c)").toRegexString());
+    } catch (RegexParseException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCache() {
+    Expr e1 = RegexParser.parse("a(b|c)*");
+    ((AggExpr) e1).addChild(new Text("d"));
+    Expr e2 = RegexParser.parse("a(b|c)*");
+    assertNotSame(e1, e2);
+    assertEquals("a(b|c)*", e2.toRegexString());
+    e2.debug();
+
+    RegexParser.setCacheCapacity(0);
+    assertEquals("a(b|c)*", RegexParser.parse("a(b|c)*").toRegexString());
+    RegexParser.setCacheCapacity(RegexParser.CACHE_CAPACITY);
+  }
+
 }
@@ -6,6 +6,7 @@ import static org.hamcrest.core.Is.is;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -14,7 +15,10 @@ import org.junit.Test;
 import com.google.re2j.Pattern;
 
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.AdaptiveRepairer;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.Rewriter;
 import fr.telecom_paristech.dbweb.regexrepair.data.Table;
+import fr.telecom_paristech.dbweb.regexrepair.iface.AsyncFeedback;
+import fr.telecom_paristech.dbweb.regexrepair.iface.Feedback;
 import fr.telecom_paristech.dbweb.regexrepair.iface.RegexRepairer;
 
 public class RepairTests {
@@ -34,6 +38,16 @@ public class RepairTests {
 
   static RegexRepairer repairer = new AdaptiveRepairer();
 
+  /** Regexes and words for comparing the configurations of the repairer */
+  private static final List<String> REGEXES = Arrays.asList("(http.//)?(\\w+.)\\w+", "\\d{3} \\d{3}-\\d{4}");
+
+  private static final List<String> URLS = Arrays.asList("ftp://a", "https://b", "https://a", "http://www.corporate");
+
+  private static final List<String> PHONES = Arrays.asList("123 456-abc", "123-456-7890", "12 345-6789", "1234 567-8901");
+
+  /** Feedback that rejects some of the candidates */
+  private static final Feedback FEEDBACK = r -> !r.contains("ftp") && !r.contains("7890") && r.length() < 40;
+
   public static void check(String regex, String toadd) {
     check(regex, Arrays.asList(toadd), null);
   }
@@ -293,4 +307,69 @@ public class RepairTests {
     check(" {1,2}", "  A");
   }
 
+  @Test
+  public void largeRepeat() {
+    check("\\d{1,3000}", Arrays.asList("12a45", "1-2"));
+    check("(\\d{1,10}-){1,300}", Arrays.asList("12-a45-", "1-2-3"));
+  }
+
+  @Test
+  public void parallel() {
+    // same result as sequential matching
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RegexRepairer parallel = new AdaptiveRepairer().parallel(pool);
+      for (String regex : REGEXES) {
+        Assert.assertEquals(repair(regex, URLS), parallel.repair(regex, URLS, null));
+        Assert.assertEquals(repair(regex, PHONES), parallel.repair(regex, PHONES, null));
+      }
+      Assert.assertEquals(repair("(a|b)((c|d)(e|f))*", URLS), parallel.repair("(a|b)((c|d)(e|f))*", URLS, null));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void batching() {
+    // same result as checking word by word
+    for (String regex : REGEXES) {
+      for (int n : Arrays.asList(2, 3, 10)) {
+        RegexRepairer batching = new AdaptiveRepairer().batching(n);
+        Assert.assertEquals(new AdaptiveRepairer().repair(regex, URLS, FEEDBACK), batching.repair(regex, URLS, FEEDBACK));
+        Assert.assertEquals(new AdaptiveRepairer().repair(regex, PHONES, FEEDBACK), batching.repair(regex, PHONES, FEEDBACK));
+      }
+    }
+    // the feedback rejects the first and the last word, result of modifying the expression and undoing rejected words
+    for (RegexRepairer r : Arrays.asList(new AdaptiveRepairer(), new AdaptiveRepairer().batching(3), new AdaptiveRepairer().batching(10))) {
+      Assert.assertEquals("\\d{3} \\d{3}-\\d{4}|https://b|https://a", r.repair("\\d{3} \\d{3}-\\d{4}", URLS, FEEDBACK));
+    }
+  }
+
+  @Test
+  public void async() {
+    // speculative evaluation gives the same result as checking word by word
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      AsyncFeedback async = AsyncFeedback.of(FEEDBACK, pool);
+      RegexRepairer speculative = new AdaptiveRepairer().batching(4);
+      for (String regex : REGEXES) {
+        Assert.assertEquals(new AdaptiveRepairer().repair(regex, URLS, FEEDBACK), speculative.repair(regex, URLS, async));
+        Assert.assertEquals(new AdaptiveRepairer().repair(regex, PHONES, FEEDBACK), speculative.repair(regex, PHONES, async));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void rewriting() {
+    RegexRepairer rewriting = new AdaptiveRepairer().rewriting(Rewriter.standard());
+    for (String regex : REGEXES) {
+      for (List<String> words : Arrays.asList(URLS, PHONES)) {
+        Pattern p = Pattern.compile(rewriting.repair(regex, words, null));
+        words.forEach(w -> Assert.assertTrue(w, p.matches(w)));
+      }
+    }
+  }
+
 }
@@ -1,21 +1,31 @@
 package fr.telecom_paristech.dbweb.regexrepair;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
+import fr.telecom_paristech.dbweb.regexrepair.helper.RegexTools;
+import fr.telecom_paristech.dbweb.regexrepair.helper.RegexTools.MatchCount;
+import fr.telecom_paristech.dbweb.regexrepair.helper.RegexTools.MatchIndices;
+
 public class ToolsTest {
 
   /** Check two lists for equality and print useful message */
   private static <T, R> void checkEquality(List<T> expected, List<R> actual) {
-    org.junit.Assert.assertEquals(expected.size(), actual.size());
+    assertEquals(expected.size(), actual.size());
     for (int i = 0; i < expected.size(); i++) {
       T expItem = expected.get(i);
       R actItem = actual.get(i);
       if (!Objects.equals(expItem, actItem)) {
-        org.junit.Assert.fail("lists differ at position " + i + " expected " + expItem + " but was: " + actItem);
+        fail("lists differ at position " + i + " expected " + expItem + " but was: " + actItem);
       }
     }
   }
@@ -32,4 +42,30 @@ public class ToolsTest {
     expected = Arrays.asList(Arrays.asList(1, 2, 3, 4, 5));
     checkEquality(expected, actual);
   }
+
+  @Test
+  public void testMatchAll() {
+    com.google.re2j.Pattern p = com.google.re2j.Pattern.compile("a*b");
+    List<String> words = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      words.add(i % 3 == 0 ? "aab" : (i % 3 == 1 ? "ac" : "b"));
+    }
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      MatchIndices sequential = RegexTools.matchAll(p, words);
+      MatchIndices parallel = RegexTools.matchAll(p, words, pool);
+      MatchIndices stream = RegexTools.matchAll(p, words.stream());
+      assertEquals(sequential.matched, parallel.matched);
+      assertEquals(sequential.matched, stream.matched);
+      assertEquals(10000, parallel.size);
+      assertEquals(3333, parallel.missedCount());
+      checkEquality(words.stream().filter(w -> w.equals("ac")).collect(Collectors.toList()), parallel.missed(words));
+
+      MatchCount count = RegexTools.countMatches(p, words, pool);
+      assertEquals(6667, count.matched.size());
+      assertEquals(3333, count.missed.size());
+    } finally {
+      pool.shutdown();
+    }
+  }
 }
@@ -2,14 +2,26 @@ package fr.telecom_paristech.dbweb.regexrepair;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Function;
 
 import org.junit.Test;
 
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.AggExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Alt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Conc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Expr;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.RegexParser;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.regex.Text;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.AltToRep;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.CleanUp;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.CopyExpr;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.EmbedInConc;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.FoldRepeat;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.GeneralizeAlt;
+import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.Rewriter;
 import fr.telecom_paristech.dbweb.regexrepair.adaptive.transform.SimplifyRepeat;
 
 public class TransformTest {
@@ -55,4 +67,67 @@ public class TransformTest {
     base("(a|b)+", "(a|b){1,2}(a|b)*", e -> new FoldRepeat().apply(e));
     base("(a|b)+", "(a|b){1,2}(a|b){0,2}(a|b)?(a|b)?(a|b){0,2}(a|b)?(a|b)*", e -> new FoldRepeat().apply(e));
   }
+
+  /** Apply the transformations of the postprocessing step */
+  static Expr postprocess(Expr e, List<CopyExpr> steps) {
+    for (CopyExpr step : steps) {
+      e = step.apply(e);
+    }
+    return e;
+  }
+
+  static List<CopyExpr> steps() {
+    return Arrays.asList(new CleanUp(), new SimplifyRepeat(), new FoldRepeat(), new GeneralizeAlt(), new AltToRep());
+  }
+
+  static void alts(Expr e, List<Alt> result) {
+    if (e instanceof Alt) {
+      result.add((Alt) e);
+    }
+    if (e instanceof AggExpr) {
+      ((AggExpr) e).getChildren().forEach(c -> alts(c, result));
+    }
+  }
+
+  @Test
+  public void incremental() {
+    for (String regex : Arrays.asList("(a|b)c(d|e{2})(f|)", "((a|b)(a|b)|c)*d(e(f|g)|h)", "\\d\\d(\\d|a)?\\d*(-|\\.)(b{3}|b{7}|b{9,10}|c)")) {
+      Expr e = new EmbedInConc().apply(RegexParser.parse(regex));
+      List<CopyExpr> steps = steps();
+      steps.forEach(CopyExpr::incremental);
+      List<Alt> alts = new ArrayList<>();
+      alts(e, alts);
+      // modify the tree in the same way as the repair algorithm
+      for (int i = 0; i < 3; i++) {
+        for (Alt alt : alts) {
+          alt.addChild(new Conc());
+          assertEquals(postprocess(e, steps()).toRegexString(), postprocess(e, steps).toRegexString());
+          alt.removeLastChild();
+          assertEquals(postprocess(e, steps()).toRegexString(), postprocess(e, steps).toRegexString());
+        }
+        alts.get(i).addChild(Expr.textExpr("xy" + i));
+        assertEquals(postprocess(e, steps()).toRegexString(), postprocess(e, steps).toRegexString());
+      }
+    }
+  }
+
+  @Test
+  public void rewriter() {
+    // same as the transformations one after another
+    for (String regex : Arrays.asList("(|abc(def)*) (ab||def)", "aaaaa*", "a{2}aa{3}", "(a|b){1,2}(a|b){0,2}(a|b)?(a|b)*", "a{3}|a{7}|a{9,10}",
+        "(a||b)c(d||)", "((a|b)(a|b)|c)*d(e(f|g)|h)", "(ab)(ab)(ab)c", "((a|a)|(b|(c|)))d", "(|1)((||3)|)\\d((|(|\\)) )|0)")) {
+      Expr e = RegexParser.parse(regex);
+      String before = e.toRegexString();
+      assertEquals(postprocess(e, steps()).toRegexString(), Rewriter.standard().apply(e).toRegexString());
+      assertEquals(before, e.toRegexString());
+    }
+    // until a fixpoint
+    base("a{0,3}", "(a|)(a|)(a|)", e -> Rewriter.standard().apply(e));
+    base("\\d{3,5}-", "(\\d{3}|\\d{4}|\\d{5})-", e -> Rewriter.standard().apply(e));
+
+    // additional rule, which creates new opportunities for the other rules
+    Rewriter rw = Rewriter.standard().add(0, (e, regex) -> e instanceof Text && regex.apply(e).equals("b") ? new Text("a") : null);
+    base("a{6}", "aaaabb", e -> rw.apply(e));
+    base("a+", "(b|a)+", e -> rw.apply(e));
+  }
 }